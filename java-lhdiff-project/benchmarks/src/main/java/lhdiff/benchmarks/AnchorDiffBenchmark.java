@@ -0,0 +1,59 @@
+package lhdiff.benchmarks;
+
+import lhdiff.AnchorDiff;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Step 2 engines on a heavily rewritten file: a third of the lines changed, blocks of
+ * 100 lines moved, and many repeated lines such as "}" and blanks. Works on line ids,
+ * as the engines do after LineSymbols. Myers' O(ND) search is quadratic on such input
+ * (about a second at 10 000 lines), so larger sizes are left to e.g.
+ * {@code -p engine=histogram -p lines=1000000}.
+ */
+@State(Scope.Benchmark)
+public class AnchorDiffBenchmark extends BenchmarkDefaults {
+    @Param({ "1000", "10000" })
+    public int lines;
+
+    @Param({ "myers", "histogram", "linear" })
+    public String engine;
+
+    private AnchorDiff anchorDiff;
+    private int[] oldIds;
+    private int[] newIds;
+
+    @Setup
+    public void setUp() {
+        anchorDiff = AnchorDiff.named(engine);
+        Random random = new Random(3110);
+        int n = lines;
+        oldIds = new int[n];
+        // Ids 0 to 2 stand for the repeated lines
+        for (int i = 0; i < n; i++) oldIds[i] = random.nextInt(4) == 0 ? random.nextInt(3) : 3 + random.nextInt(n);
+        List<Integer> edited = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (random.nextInt(3) == 0) edited.add(3 + n + random.nextInt(n)); // rewritten line
+            else edited.add(oldIds[i]);
+        }
+        for (int move = 0; move < n / 200; move++) {
+            int from = random.nextInt(edited.size() - 100);
+            List<Integer> block = new ArrayList<>(edited.subList(from, from + 100));
+            edited.subList(from, from + 100).clear();
+            edited.addAll(random.nextInt(edited.size()), block);
+        }
+        newIds = edited.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Benchmark
+    public int[] match() {
+        return anchorDiff.match(oldIds, newIds);
+    }
+}
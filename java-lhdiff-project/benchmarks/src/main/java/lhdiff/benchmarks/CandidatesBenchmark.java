@@ -0,0 +1,15 @@
+package lhdiff.benchmarks;
+
+import lhdiff.CandidateTable;
+import lhdiff.SimhashGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Step 3 search: top-k candidates by Hamming distance for every unmapped old line. */
+public class CandidatesBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public CandidateTable generateCandidates(PipelineState state, Step2State anchors) {
+        return SimhashGenerator.LineSimhash.generateCandidates(anchors.oldHashes, anchors.newHashes,
+                anchors.step2.unmappedOld, anchors.step2.unmappedNew, state.config.candidateLimit);
+    }
+}
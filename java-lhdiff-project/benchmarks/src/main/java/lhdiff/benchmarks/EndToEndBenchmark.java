@@ -0,0 +1,14 @@
+package lhdiff.benchmarks;
+
+import lhdiff.LHDiffEngine;
+import lhdiff.LineMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Steps 1 to 6 from raw lines, including normalization and SimHashing of both files. */
+public class EndToEndBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public LineMapping diff(PipelineState state) {
+        return new LHDiffEngine(state.config).diff(state.oldLines, state.newLines);
+    }
+}
@@ -0,0 +1,101 @@
+package lhdiff.benchmarks;
+
+import lhdiff.JavaLineNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Step 1: normalizing every line of the old file, with the single-pass normalizer and
+ * with the multi-pass, regex-based one it replaced, for the lines/sec before and after.
+ */
+public class NormalizerBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public void normalizeLine(PipelineState state, Blackhole bh) {
+        JavaLineNormalizer.StatefulNormalizer normalizer = new JavaLineNormalizer.StatefulNormalizer();
+        for (String line : state.oldLines) bh.consume(normalizer.normalizeLine(line));
+    }
+
+    @Benchmark
+    public void normalizeLineReference(PipelineState state, Blackhole bh) {
+        ReferenceNormalizer normalizer = new ReferenceNormalizer();
+        for (String line : state.oldLines) bh.consume(normalizer.normalizeLine(line));
+    }
+
+    @Benchmark
+    public List<String> normalizeAll(PipelineState state) {
+        return JavaLineNormalizer.normalizeAll(state.oldLines);
+    }
+
+    /** The original multi-pass implementation, as in JavaLineNormalizerTest. */
+    static final class ReferenceNormalizer {
+        private boolean inBlockComment = false;
+        private boolean inTextBlock = false;
+
+        String normalizeLine(String line) {
+            if (line == null) return "";
+            StringBuilder out = new StringBuilder();
+            int len = line.length();
+            int i = 0;
+            while (i < len) {
+                char c = line.charAt(i);
+                if (inBlockComment) {
+                    if (c == '*' && i + 1 < len && line.charAt(i + 1) == '/') {
+                        inBlockComment = false;
+                        i += 2;
+                        continue;
+                    }
+                    i++;
+                    continue;
+                }
+                if (inTextBlock) {
+                    if (c == '"' && i + 2 < len && line.charAt(i + 1) == '"' && line.charAt(i + 2) == '"') {
+                        inTextBlock = false;
+                        i += 3;
+                        continue;
+                    }
+                    out.append(c);
+                    i++;
+                    continue;
+                }
+                if (c == '/' && i + 1 < len && line.charAt(i + 1) == '/') break;
+                if (c == '/' && i + 1 < len && line.charAt(i + 1) == '*') {
+                    inBlockComment = true;
+                    i += 2;
+                    continue;
+                }
+                if (c == '"' && i + 2 < len && line.charAt(i + 1) == '"' && line.charAt(i + 2) == '"') {
+                    inTextBlock = true;
+                    i += 3;
+                    continue;
+                }
+                if (c == '"' || c == '\'') {
+                    out.append(c);
+                    i++;
+                    while (i < len) {
+                        char ch = line.charAt(i);
+                        out.append(ch);
+                        if (ch == '\\') {
+                            if (i + 1 < len) { i++; out.append(line.charAt(i)); }
+                            i++; continue;
+                        }
+                        if (ch == c) { i++; break; }
+                        i++;
+                    }
+                    continue;
+                }
+                out.append(c);
+                i++;
+            }
+            String result = out.toString();
+            result = result.replace(";", "");
+            result = result.replaceAll("\\b[a-zA-Z_][a-zA-Z0-9_]*\\s*\\(", "func_id(");
+            result = result.trim().replaceAll("\\s+", " ");
+            result = result.toLowerCase();
+            if (result.isEmpty()) return "BLANK_TOKEN";
+            return result;
+        }
+    }
+}
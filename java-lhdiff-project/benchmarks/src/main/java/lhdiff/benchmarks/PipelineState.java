@@ -0,0 +1,69 @@
+package lhdiff.benchmarks;
+
+import lhdiff.LHDiffConfig;
+import lhdiff.LineSnapshot;
+import lhdiff.WorkloadGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One old/new pair per size, generated by WorkloadGenerator from the dataset sources,
+ * and the engine configuration. Benchmarks of later stages take Step2State or
+ * Step4State, which build on this one; nothing past Step 1 is computed here.
+ */
+@State(Scope.Benchmark)
+public class PipelineState {
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int lines;
+
+    // "auto": "myers" (the default engine) up to MAX_MYERS_LINES, "histogram" above,
+    // where Myers' O(ND) search takes minutes per diff
+    @Param({ "auto" })
+    public String anchorDiff;
+
+    // Seed sources for WorkloadGenerator, relative to the directory JMH runs in
+    @Param({ "../datasets" })
+    public String seeds;
+
+    static final int MAX_MYERS_LINES = 100_000;
+
+    public LHDiffConfig config;
+    public List<String> oldLines;
+    public List<String> newLines;
+    public LineSnapshot oldSnapshot;
+    public LineSnapshot newSnapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String engine = !anchorDiff.equals("auto") ? anchorDiff : lines > MAX_MYERS_LINES ? "histogram" : "myers";
+        config = LHDiffConfig.DEFAULTS.withAnchorDiff(engine);
+        WorkloadGenerator.Workload workload = new WorkloadGenerator(seedSources(Paths.get(seeds)),
+                new WorkloadGenerator.Rates()).generate(lines, 42);
+        oldLines = workload.oldLines;
+        newLines = workload.newLines;
+        oldSnapshot = LineSnapshot.fromLines(oldLines);
+        newSnapshot = LineSnapshot.fromLines(newLines);
+    }
+
+    static List<List<String>> seedSources(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(p -> p.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+        List<List<String>> sources = new ArrayList<>();
+        for (Path file : files) sources.add(LineSnapshot.load(file).rawLines);
+        return sources;
+    }
+}
@@ -0,0 +1,20 @@
+package lhdiff.benchmarks;
+
+import lhdiff.MappingResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.BitSet;
+
+/** Step 4: scoring and assigning all candidates (copies the unmapped sets it consumes). */
+@State(Scope.Thread)
+public class ResolverBenchmark extends BenchmarkDefaults {
+    private final MappingResolver resolver = new MappingResolver();
+
+    @Benchmark
+    public int[] resolveCandidates(PipelineState state, Step2State anchors, Step4State resolved) {
+        return resolver.resolveCandidates(state.oldSnapshot, state.newSnapshot, anchors.step2.symbols,
+                resolved.candidates, (BitSet) anchors.step2.unmappedOld.clone(), (BitSet) anchors.step2.unmappedNew.clone());
+    }
+}
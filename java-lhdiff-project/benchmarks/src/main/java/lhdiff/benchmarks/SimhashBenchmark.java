@@ -0,0 +1,103 @@
+package lhdiff.benchmarks;
+
+import lhdiff.SimhashGenerator;
+import lhdiff.SimhashKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+
+/**
+ * Step 3 hashing: per-line SimHash and the sliding-window content/context SimHashes,
+ * and the Step 3 distance scan. The kernels of SimhashKernels are measured next to the
+ * scalar loops they replaced: the bit-at-a-time SimHash and the per-pair Hamming distance.
+ */
+@State(Scope.Thread)
+public class SimhashBenchmark extends BenchmarkDefaults {
+    // Old lines scanned against every new line per invocation
+    private static final int QUERIES = 100;
+
+    private final SimhashGenerator.LineSimhash generator = new SimhashGenerator.LineSimhash(0, 0L, 0L);
+
+    /** Combined SimHashes of both files, and scratch space for one scan. */
+    @State(Scope.Benchmark)
+    public static class Hashes {
+        long[] queries;
+        long[] newHashes;
+        int[] distances;
+        int[] histogram;
+
+        @Setup
+        public void setUp(PipelineState state) {
+            SimhashGenerator.LineSimhash[] oldLines = state.oldSnapshot.lineSimhashes(state.config.windowSize);
+            SimhashGenerator.LineSimhash[] newLines = state.newSnapshot.lineSimhashes(state.config.windowSize);
+            queries = new long[Math.min(QUERIES, oldLines.length)];
+            for (int q = 0; q < queries.length; q++) {
+                queries[q] = oldLines[(int) ((long) q * oldLines.length / queries.length)].CombinedSimhash;
+            }
+            newHashes = new long[newLines.length];
+            for (int j = 0; j < newLines.length; j++) newHashes[j] = newLines[j].CombinedSimhash;
+            distances = new int[newHashes.length];
+            histogram = new int[65];
+        }
+    }
+
+    @Benchmark
+    public void computeSimhash(PipelineState state, Blackhole bh) {
+        for (String line : state.oldSnapshot.normalizedLines) bh.consume(generator.computeSimhash(line));
+    }
+
+    @Benchmark
+    public void computeSimhashPerBit(PipelineState state, Blackhole bh) {
+        for (String line : state.oldSnapshot.normalizedLines) bh.consume(perBitSimhash(line));
+    }
+
+    @Benchmark
+    public SimhashGenerator.LineSimhash[] buildLineSimhashes(PipelineState state) {
+        return generator.buildLineSimhashes(state.oldSnapshot.normalizedLines, state.config.windowSize);
+    }
+
+    @Benchmark
+    public void hammingScan(Hashes hashes, Blackhole bh) {
+        for (long query : hashes.queries) {
+            Arrays.fill(hashes.histogram, 0);
+            SimhashKernels.hammingScan(query, hashes.newHashes, hashes.newHashes.length, hashes.distances, hashes.histogram);
+            bh.consume(hashes.histogram);
+        }
+    }
+
+    @Benchmark
+    public void hammingPerPair(Hashes hashes, Blackhole bh) {
+        for (long query : hashes.queries) {
+            Arrays.fill(hashes.histogram, 0);
+            for (int j = 0; j < hashes.newHashes.length; j++) {
+                int d = generator.hammingDistance(query, hashes.newHashes[j]);
+                hashes.distances[j] = d;
+                hashes.histogram[d]++;
+            }
+            bh.consume(hashes.histogram);
+        }
+    }
+
+    // computeSimhash as it was before SimhashKernels: one vote counter update per token bit
+    private long perBitSimhash(String text) {
+        if (text == null || text.isEmpty()) return 0L;
+        int[] bitVector = new int[64];
+        for (String token : text.split("\\s+")) {
+            if (token.isEmpty()) continue;
+            long hash = generator.hash64(token);
+            for (int bit = 0; bit < 64; bit++) {
+                if ((hash & (1L << bit)) != 0) bitVector[bit] += 1;
+                else bitVector[bit] -= 1;
+            }
+        }
+        long simhash = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (bitVector[bit] > 0) simhash |= 1L << bit;
+        }
+        return simhash;
+    }
+}
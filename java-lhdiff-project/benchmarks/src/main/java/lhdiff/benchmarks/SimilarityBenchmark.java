@@ -0,0 +1,69 @@
+package lhdiff.benchmarks;
+
+import lhdiff.CandidateTable;
+import lhdiff.SimhashGenerator;
+import lhdiff.SimilarityMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Step 4 scoring kernels on the best candidate pair of up to {@link #PAIRS} unmapped old
+ * lines: content similarity (edit distance) and context similarity (cosine).
+ */
+public class SimilarityBenchmark extends BenchmarkDefaults {
+    private static final int PAIRS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class Pairs {
+        String[] oldLines;
+        String[] newLines;
+        String[] oldContexts;
+        String[] newContexts;
+
+        @Setup
+        public void setUp(PipelineState state, Step4State resolved) {
+            SimhashGenerator.LineSimhash generator = new SimhashGenerator.LineSimhash(0, 0L, 0L);
+            List<String> oldNormalized = state.oldSnapshot.normalizedLines;
+            List<String> newNormalized = state.newSnapshot.normalizedLines;
+            List<int[]> pairs = new ArrayList<>();
+            CandidateTable candidates = resolved.candidates;
+            for (int i = 0; i < candidates.oldSize() && pairs.size() < PAIRS; i++) {
+                if (candidates.end(i) > candidates.start(i)) {
+                    pairs.add(new int[] { i, candidates.newIndex[candidates.start(i)] });
+                }
+            }
+            oldLines = new String[pairs.size()];
+            newLines = new String[pairs.size()];
+            oldContexts = new String[pairs.size()];
+            newContexts = new String[pairs.size()];
+            for (int p = 0; p < pairs.size(); p++) {
+                int i = pairs.get(p)[0];
+                int j = pairs.get(p)[1];
+                oldLines[p] = oldNormalized.get(i);
+                newLines[p] = newNormalized.get(j);
+                oldContexts[p] = generator.extractContext(state.oldLines, i, 4);
+                newContexts[p] = generator.extractContext(state.newLines, j, 4);
+            }
+        }
+    }
+
+    @Benchmark
+    public void contentSimilarity(Pairs pairs, Blackhole bh) {
+        for (int p = 0; p < pairs.oldLines.length; p++) {
+            bh.consume(SimilarityMetrics.getContentSimilarity(pairs.oldLines[p], pairs.newLines[p]));
+        }
+    }
+
+    @Benchmark
+    public void contextSimilarity(Pairs pairs, Blackhole bh) {
+        for (int p = 0; p < pairs.oldContexts.length; p++) {
+            bh.consume(SimilarityMetrics.getContextSimilarity(pairs.oldContexts[p], pairs.newContexts[p]));
+        }
+    }
+}
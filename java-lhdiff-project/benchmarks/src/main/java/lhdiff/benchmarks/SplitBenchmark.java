@@ -0,0 +1,21 @@
+package lhdiff.benchmarks;
+
+import lhdiff.Step5LineSplitDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.BitSet;
+
+/** Step 5: split detection on the lines Step 4 left unmapped. */
+@State(Scope.Thread)
+public class SplitBenchmark extends BenchmarkDefaults {
+    private final Step5LineSplitDetector detector = new Step5LineSplitDetector();
+
+    @Benchmark
+    public Step5LineSplitDetector.Splits detectSplits(PipelineState state, Step2State anchors, Step4State resolved) {
+        return detector.detectSplits(state.oldSnapshot, state.newSnapshot, anchors.step2.symbols,
+                anchors.step2.anchorOld, anchors.step2.anchorNew,
+                (BitSet) resolved.afterStep4Old.clone(), (BitSet) resolved.afterStep4New.clone());
+    }
+}
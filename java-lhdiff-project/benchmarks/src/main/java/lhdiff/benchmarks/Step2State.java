@@ -0,0 +1,25 @@
+package lhdiff.benchmarks;
+
+import lhdiff.AnchorDiff;
+import lhdiff.LinesMapping;
+import lhdiff.SimhashGenerator;
+import lhdiff.Step2Result;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** The pair of PipelineState through Step 2, with the SimHashes Step 3 searches. */
+@State(Scope.Benchmark)
+public class Step2State {
+    public SimhashGenerator.LineSimhash[] oldHashes;
+    public SimhashGenerator.LineSimhash[] newHashes;
+    public Step2Result step2;
+
+    @Setup(Level.Trial)
+    public void setUp(PipelineState input) {
+        oldHashes = input.oldSnapshot.lineSimhashes(input.config.windowSize);
+        newHashes = input.newSnapshot.lineSimhashes(input.config.windowSize);
+        step2 = new LinesMapping(AnchorDiff.named(input.config.anchorDiff)).run(input.oldSnapshot, input.newSnapshot);
+    }
+}
@@ -0,0 +1,32 @@
+package lhdiff.benchmarks;
+
+import lhdiff.CandidateTable;
+import lhdiff.MappingResolver;
+import lhdiff.SimhashGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.BitSet;
+
+/**
+ * The Step 3 candidates of Step2State, and the unmapped sets as Step 4 leaves them.
+ * Stages that consume the unmapped sets get copies.
+ */
+@State(Scope.Benchmark)
+public class Step4State {
+    public CandidateTable candidates;
+    public BitSet afterStep4Old;
+    public BitSet afterStep4New;
+
+    @Setup(Level.Trial)
+    public void setUp(PipelineState input, Step2State anchors) {
+        candidates = SimhashGenerator.LineSimhash.generateCandidates(anchors.oldHashes, anchors.newHashes,
+                anchors.step2.unmappedOld, anchors.step2.unmappedNew, input.config.candidateLimit);
+        afterStep4Old = (BitSet) anchors.step2.unmappedOld.clone();
+        afterStep4New = (BitSet) anchors.step2.unmappedNew.clone();
+        new MappingResolver().resolveCandidates(input.oldSnapshot, input.newSnapshot, anchors.step2.symbols,
+                candidates, afterStep4Old, afterStep4New);
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.Arrays;
+
+/**
+ * Pluggable engine for the Step 2 anchor diff.
+ *
+ * An implementation matches lines of two interned files (see LineSymbols) along a
+ * common subsequence. LinesMapping turns the matched, non-blank pairs into
+ * Step2Result anchors, and everything left over becomes unmapped, whichever engine
+ * produced the match.
+ */
+public interface AnchorDiff {
+
+    /**
+     * Matches equal lines of {@code oldIds} and {@code newIds}.
+     * @return for every old line the index of its matched new line, or -1. Matched pairs
+     *         have equal ids and are strictly increasing in both files.
+     */
+    int[] match(int[] oldIds, int[] newIds);
+
+    /** Engine names accepted by {@link #named}. */
+    String[] NAMES = { "myers", "histogram", "linear" };
+
+    /**
+     * Looks an engine up by name: "myers" (default, same edit path as java-diff-utils),
+     * "histogram" (histogram/patience diff) or "linear" (linear-space divide-and-conquer Myers).
+     */
+    static AnchorDiff named(String name) {
+        switch (name) {
+            case "myers":
+                return new IntMyersDiff();
+            case "histogram":
+                return new HistogramAnchorDiff();
+            case "linear":
+                return new LinearSpaceMyersDiff();
+            default:
+                throw new IllegalArgumentException("Unknown anchor diff '" + name + "', expected one of "
+                        + Arrays.toString(NAMES));
+        }
+    }
+}
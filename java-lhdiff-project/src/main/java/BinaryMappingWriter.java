@@ -0,0 +1,136 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+
+/**
+ * Compact binary form of a LineMapping, readable with {@link #read}.
+ *
+ * Layout: the magic "LHDM", a version byte, then unsigned LEB128 varints: old size, new
+ * size, and for every old line {@code newStart + 1} (0 for unmapped) followed, for
+ * mapped lines, by {@code newEnd - newStart}. Both blank-line sets close the stream as
+ * a varint word count and that many big-endian longs. An unmapped line takes one byte.
+ * A mapped line takes the 1 to 5 bytes of {@code newStart + 1} (7 bits per byte, so 1
+ * byte below new line 127 and 2 below 16383) plus its span, 1 byte unless the line was
+ * split over 128 or more new lines.
+ *
+ * {@link #read} buffers ahead, so several mappings in one stream are framed with
+ * {@link #writeFrame}: the file's path and status as {@code writeUTF} strings, then the
+ * mapping's length as an int and its bytes (length 0 when there is no mapping).
+ */
+public final class BinaryMappingWriter implements MappingWriter {
+    private static final int MAGIC = 0x4C48444D; // "LHDM"
+    private static final int VERSION = 1;
+
+    @Override
+    public void write(LineMapping mapping, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        writeVarint(data, mapping.oldSize());
+        writeVarint(data, mapping.newSize);
+        for (int i = 0; i < mapping.oldSize(); i++) {
+            writeVarint(data, mapping.newStart[i] + 1);
+            if (mapping.isMapped(i)) writeVarint(data, mapping.newEnd[i] - mapping.newStart[i]);
+        }
+        writeBits(data, mapping.oldBlank);
+        writeBits(data, mapping.newBlank);
+        data.flush();
+    }
+
+    /** One framed mapping of a multi-file stream; {@code mapping} is null when none was written. */
+    public static final class Frame {
+        public final String path;
+        public final String status;
+        public final LineMapping mapping;
+
+        Frame(String path, String status, LineMapping mapping) {
+            this.path = path;
+            this.status = status;
+            this.mapping = mapping;
+        }
+    }
+
+    /** Writes one frame of a multi-file stream; {@code mapping} may be null. */
+    public void writeFrame(String path, String status, LineMapping mapping, DataOutputStream out) throws IOException {
+        out.writeUTF(path);
+        out.writeUTF(status);
+        if (mapping == null) {
+            out.writeInt(0);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(mapping, bytes);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /** Reads the next frame of a multi-file stream, or returns null at its end. */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        String path;
+        try {
+            path = in.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+        String status = in.readUTF();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new Frame(path, status, bytes.length == 0 ? null : read(new ByteArrayInputStream(bytes)));
+    }
+
+    public static LineMapping read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != MAGIC) throw new IOException("Not a binary line mapping");
+        int version = data.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported binary line mapping version " + version);
+        int oldSize = readVarint(data);
+        int newSize = readVarint(data);
+        int[] start = new int[oldSize];
+        int[] end = new int[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            start[i] = readVarint(data) - 1;
+            end[i] = start[i] < 0 ? -1 : start[i] + readVarint(data);
+        }
+        BitSet oldBlank = readBits(data);
+        BitSet newBlank = readBits(data);
+        return new LineMapping(start, end, newSize, oldBlank, newBlank);
+    }
+
+    private static void writeVarint(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeBits(DataOutputStream data, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        writeVarint(data, words.length);
+        for (long word : words) data.writeLong(word);
+    }
+
+    private static BitSet readBits(DataInputStream data) throws IOException {
+        long[] words = new long[readVarint(data)];
+        for (int i = 0; i < words.length; i++) words[i] = data.readLong();
+        return BitSet.valueOf(words);
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+
+/**
+ * Step 3 candidates in compressed sparse row form.
+ *
+ * The candidates of old line {@code i} are the entries {@code offsets[i]} up to (not
+ * including) {@code offsets[i + 1]} of {@link #newIndex} and {@link #distance}, ordered
+ * best first: ascending Hamming distance, then ascending new line index. Old lines that
+ * were not searched have an empty range.
+ */
+public final class CandidateTable {
+    public final int[] offsets;
+    public final int[] newIndex;
+    public final int[] distance;
+    public final long comparisons; // SimHash distances computed to find the candidates
+
+    private CandidateTable(int[] offsets, int[] newIndex, int[] distance, long comparisons) {
+        this.offsets = offsets;
+        this.newIndex = newIndex;
+        this.distance = distance;
+        this.comparisons = comparisons;
+    }
+
+    public int oldSize() {
+        return offsets.length - 1;
+    }
+
+    public int start(int oldIdx) {
+        return offsets[oldIdx];
+    }
+
+    public int end(int oldIdx) {
+        return offsets[oldIdx + 1];
+    }
+
+    public int size() {
+        return newIndex.length;
+    }
+
+    /** Accumulates rows in ascending old-line order. */
+    public static final class Builder {
+        private final int[] offsets;
+        private int[] newIndex = new int[64];
+        private int[] distance = new int[64];
+        private int size;
+        private int nextOld;
+        private long comparisons;
+
+        public Builder(int oldSize) {
+            offsets = new int[oldSize + 1];
+        }
+
+        /** Appends a candidate to the row of {@code oldIdx}; rows must be filled in ascending order. */
+        public void add(int oldIdx, int newIdx, int hammingDistance) {
+            startRowsThrough(oldIdx);
+            if (size == newIndex.length) {
+                newIndex = Arrays.copyOf(newIndex, size * 2);
+                distance = Arrays.copyOf(distance, size * 2);
+            }
+            newIndex[size] = newIdx;
+            distance[size] = hammingDistance;
+            size++;
+        }
+
+        /** Records that {@code n} more SimHash distances were computed. */
+        public void countComparisons(int n) {
+            comparisons += n;
+        }
+
+        public CandidateTable build() {
+            startRowsThrough(offsets.length - 1);
+            offsets[offsets.length - 1] = size;
+            return new CandidateTable(offsets, Arrays.copyOf(newIndex, size), Arrays.copyOf(distance, size),
+                    comparisons);
+        }
+
+        private void startRowsThrough(int oldIdx) {
+            while (nextOld <= oldIdx && nextOld < offsets.length - 1) {
+                offsets[nextOld++] = size;
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Step 4 context term vectors of every line of one file, built once per diff.
+ *
+ * The context of a line is what MappingResolver used to rebuild per candidate pair:
+ * the raw lines within the window around it (not the line itself), joined by spaces,
+ * trimmed and split on whitespace. Each line's vector is stored as ascending token ids
+ * with their counts, in compressed sparse row form, together with its Euclidean norm.
+ * Cosine similarity is then a merge-join of two sorted id lists. Token ids come from
+ * a {@link Tokens} table shared by the old and new file.
+ */
+public final class ContextVectors {
+    private final int[] offsets;
+    private final int[] ids;
+    private final int[] counts;
+    private final double[] norms;
+
+    private ContextVectors(int[] offsets, int[] ids, int[] counts, double[] norms) {
+        this.offsets = offsets;
+        this.ids = ids;
+        this.counts = counts;
+        this.norms = norms;
+    }
+
+    /** Token to id table; use one per diff so both files' ids agree. */
+    public static final class Tokens {
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        int id(String token) {
+            Integer id = ids.get(token);
+            if (id == null) {
+                id = ids.size();
+                ids.put(token, id);
+            }
+            return id;
+        }
+    }
+
+    public static ContextVectors build(List<String> rawLines, int windowSize, Tokens tokens) {
+        int n = rawLines.size();
+        // Token ids of each line, in order, and whether trim() could cut into the line's
+        // tokens (it strips control characters that split() keeps)
+        int[][] lineTokens = new int[n][];
+        boolean[] irregular = new boolean[n];
+        List<String> scratch = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String line = rawLines.get(i);
+            scratch.clear();
+            irregular[i] = split(line, 0, line.length(), scratch);
+            lineTokens[i] = new int[scratch.size()];
+            for (int t = 0; t < scratch.size(); t++) lineTokens[i][t] = tokens.id(scratch.get(t));
+        }
+
+        int[] offsets = new int[n + 1];
+        int[] ids = new int[Math.max(16, n * 4)];
+        int[] counts = new int[ids.length];
+        double[] norms = new double[n];
+        int size = 0;
+        int[] buffer = new int[64];
+        for (int i = 0; i < n; i++) {
+            int start = Math.max(0, i - windowSize);
+            int end = Math.min(n, i + windowSize + 1);
+            int length = 0;
+            boolean exact = true;
+            for (int j = start; j < end; j++) {
+                if (j == i) continue;
+                exact &= !irregular[j];
+                if (length + lineTokens[j].length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + lineTokens[j].length));
+                }
+                System.arraycopy(lineTokens[j], 0, buffer, length, lineTokens[j].length);
+                length += lineTokens[j].length;
+            }
+            if (!exact) {
+                // Rare: tokenize the joined context string itself
+                scratch.clear();
+                String context = joinedContext(rawLines, i, windowSize);
+                split(context, 0, context.length(), scratch);
+                length = scratch.size();
+                if (length > buffer.length) buffer = new int[length];
+                for (int t = 0; t < length; t++) buffer[t] = tokens.id(scratch.get(t));
+            }
+            Arrays.sort(buffer, 0, length);
+
+            if (size + length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + length));
+                counts = Arrays.copyOf(counts, ids.length);
+            }
+            offsets[i] = size;
+            long magnitude = 0;
+            for (int t = 0; t < length; ) {
+                int id = buffer[t];
+                int run = t;
+                while (run < length && buffer[run] == id) run++;
+                ids[size] = id;
+                counts[size] = run - t;
+                magnitude += (long) (run - t) * (run - t);
+                size++;
+                t = run;
+            }
+            norms[i] = Math.sqrt((double) magnitude);
+        }
+        offsets[n] = size;
+        return new ContextVectors(offsets, Arrays.copyOf(ids, size), Arrays.copyOf(counts, size), norms);
+    }
+
+    public int size() {
+        return norms.length;
+    }
+
+    /**
+     * Cosine similarity between context {@code i} of {@code a} and context {@code j} of
+     * {@code b}; 0.0 when either context is empty. Same value as
+     * SimilarityMetrics.getContextSimilarity on the context strings.
+     */
+    public static double cosine(ContextVectors a, int i, ContextVectors b, int j) {
+        double normA = a.norms[i];
+        double normB = b.norms[j];
+        if (normA == 0.0 || normB == 0.0) return 0.0;
+        int p = a.offsets[i], pEnd = a.offsets[i + 1];
+        int q = b.offsets[j], qEnd = b.offsets[j + 1];
+        long dot = 0;
+        while (p < pEnd && q < qEnd) {
+            int idA = a.ids[p];
+            int idB = b.ids[q];
+            if (idA < idB) {
+                p++;
+            } else if (idA > idB) {
+                q++;
+            } else {
+                dot += (long) a.counts[p++] * b.counts[q++];
+            }
+        }
+        return (double) dot / (normA * normB);
+    }
+
+    // The raw neighbouring lines (not the line itself) joined by single spaces and trimmed
+    static String joinedContext(List<String> rawLines, int index, int windowSize) {
+        StringBuilder context = new StringBuilder();
+        int start = Math.max(0, index - windowSize);
+        int end = Math.min(rawLines.size(), index + windowSize + 1);
+        for (int i = start; i < end; i++) {
+            if (i != index) context.append(rawLines.get(i)).append(" ");
+        }
+        return context.toString().trim();
+    }
+
+    /*
+     * Appends the tokens of text[from, to) as split("\\s+") would produce them (runs of
+     * anything but [ \t\n\x0B\f\r]). Returns true when a token starts or ends with a
+     * character that trim() would remove.
+     */
+    private static boolean split(String text, int from, int to, List<String> out) {
+        boolean irregular = false;
+        int i = from;
+        while (i < to) {
+            while (i < to && isSpace(text.charAt(i))) i++;
+            if (i == to) break;
+            int start = i;
+            while (i < to && !isSpace(text.charAt(i))) i++;
+            irregular |= text.charAt(start) <= ' ' || text.charAt(i - 1) <= ' ';
+            out.add(text.substring(start, i));
+        }
+        return irregular;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
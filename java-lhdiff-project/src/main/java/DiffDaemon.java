@@ -0,0 +1,217 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running diff server on a loopback TCP port, so repeated diffs share one warmed
+ * JVM, one LHDiffEngine and a cache of recently used file snapshots.
+ *
+ * The protocol is line based; a client may send any number of requests without waiting,
+ * and each connection's responses come back in request order:
+ *
+ *   PATHS\t<old path>\t<new path>\n
+ *   TEXT\t<old byte count>\t<new byte count>\n<old UTF-8 bytes><new UTF-8 bytes>
+ *   QUIT\n
+ *
+ * Each diff is answered with {@code OK <byte count>\n} followed by the mapping in the
+ * server's output format, or with a single {@code ERR <message>\n} line. Snapshots of
+ * files requested by path are kept while the file's size and modification time stay
+ * the same, so their normalized lines and SimHashes are computed once.
+ */
+public final class DiffDaemon implements Closeable {
+    private static final int MAX_TEXT_BYTES = 256 << 20;
+
+    private final LHDiffEngine engine;
+    private final MappingWriter writer;
+    private final SnapshotLru snapshots;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+
+    /** Binds to {@code port} on the loopback address; 0 picks a free port. */
+    public DiffDaemon(LHDiffEngine engine, MappingWriter writer, int port, int cachedSnapshots) throws IOException {
+        this.engine = engine;
+        this.writer = writer;
+        this.snapshots = new SnapshotLru(engine, cachedSnapshots);
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "lhdiff-daemon-connection");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /** Accepts connections until {@link #close} is called. */
+    public void serve() throws IOException {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                if (server.isClosed()) return;
+                throw e;
+            }
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream(), 1 << 16);
+             OutputStream out = new BufferedOutputStream(s.getOutputStream(), 1 << 16)) {
+            s.setTcpNoDelay(true);
+            String header;
+            while ((header = readLine(in)) != null) {
+                if (header.equals("QUIT")) break;
+                if (header.isEmpty()) continue;
+                byte[] response;
+                try {
+                    response = diff(header, in);
+                } catch (EOFException e) {
+                    if (e.getMessage() != null) writeLine(out, "ERR " + e.getMessage());
+                    break;
+                } catch (IOException | RuntimeException e) {
+                    writeLine(out, "ERR " + String.valueOf(e.getMessage()).replace('\n', ' '));
+                    // Answer right away unless more requests are already waiting
+                    if (in.available() == 0) out.flush();
+                    continue;
+                }
+                writeLine(out, "OK " + response.length);
+                out.write(response);
+                if (in.available() == 0) out.flush();
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client went away; nothing left to answer
+        }
+    }
+
+    private byte[] diff(String header, InputStream in) throws IOException {
+        String[] fields = header.split("\t", -1);
+        LineMapping mapping;
+        if (fields[0].equals("PATHS") && fields.length == 3) {
+            mapping = engine.diff(snapshots.load(Paths.get(fields[1])), snapshots.load(Paths.get(fields[2])));
+        } else if (fields[0].equals("TEXT") && fields.length == 3) {
+            // Both bodies are read before anything can fail, so the stream stays in sync
+            byte[] oldBytes = readBody(in, fields[1]);
+            byte[] newBytes = readBody(in, fields[2]);
+            mapping = engine.diff(new String(oldBytes, StandardCharsets.UTF_8), new String(newBytes, StandardCharsets.UTF_8));
+        } else {
+            throw new IOException("Unknown request: " + header);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writer.write(mapping, buffer);
+        return buffer.toByteArray();
+    }
+
+    private static byte[] readBody(InputStream in, String length) throws IOException {
+        int n;
+        try {
+            n = Integer.parseInt(length);
+        } catch (NumberFormatException e) {
+            n = -1;
+        }
+        if (n < 0 || n > MAX_TEXT_BYTES) {
+            // The rest of the stream cannot be framed any more
+            throw new EOFException("Bad byte count: " + length);
+        }
+        byte[] body = new byte[n];
+        int read = 0;
+        while (read < n) {
+            int r = in.read(body, read, n - read);
+            if (r < 0) throw new EOFException();
+            read += r;
+        }
+        return body;
+    }
+
+    // One "\n"-terminated UTF-8 line without the terminator (a trailing "\r" is dropped); null at end of stream
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) return line.size() == 0 ? null : line.toString("UTF-8");
+            line.write(b);
+        }
+        String s = line.toString("UTF-8");
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Least recently used snapshots, keyed by path and valid while size and mtime are unchanged
+    private static final class SnapshotLru {
+        private final LHDiffEngine engine;
+        private final Map<Path, Entry> entries;
+
+        SnapshotLru(LHDiffEngine engine, int capacity) {
+            this.engine = engine;
+            this.entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        LineSnapshot load(Path file) throws IOException {
+            Path key = file.toAbsolutePath().normalize();
+            BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            synchronized (entries) {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.size == size && entry.modified == modified) return entry.snapshot;
+            }
+            // Loaded outside the lock; two racing loads of one file just do the work twice
+            LineSnapshot snapshot = engine.load(key);
+            synchronized (entries) {
+                entries.put(key, new Entry(size, modified, snapshot));
+            }
+            return snapshot;
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final LineSnapshot snapshot;
+
+        Entry(long size, long modified, LineSnapshot snapshot) {
+            this.size = size;
+            this.modified = modified;
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of the diff pipeline. Only touched when
+ * DiffMetrics.JFR_AVAILABLE is set, so the engine still runs on a JVM without jdk.jfr.
+ *
+ * Record them with, for example,
+ * {@code java -XX:StartFlightRecording=filename=diff.jfr LHDiffMain Old.java New.java}
+ * and look for "lhdiff.Diff" in JDK Mission Control or {@code jfr print --events lhdiff.Diff}.
+ */
+final class DiffEvents {
+
+    private DiffEvents() {
+    }
+
+    /** One diff: its duration, input sizes, time per stage and the work counters of DiffMetrics. */
+    @Name("lhdiff.Diff")
+    @Label("Diff")
+    @Category("LHDiff")
+    @Description("One old/new file pair through the whole pipeline")
+    @StackTrace(false)
+    static final class Diff extends Event {
+        @Label("Old Lines") int oldLines;
+        @Label("New Lines") int newLines;
+        @Label("Normalize") @Timespan long normalize;
+        @Label("Anchors") @Timespan long anchorDiff;
+        @Label("Candidates") @Timespan long candidates;
+        @Label("Resolve") @Timespan long resolve;
+        @Label("Splits") @Timespan long splits;
+        @Label("Zipper") @Timespan long zipper;
+        @Label("Anchor Count") long anchors;
+        @Label("Hamming Comparisons") long hammingComparisons;
+        @Label("Levenshtein Calls") long levenshteinCalls;
+        @Label("Levenshtein Cells") long levenshteinCells;
+        @Label("Context Vectors") long contextVectors;
+        @Label("Split Attempts") long splitAttempts;
+        @Label("Split Cells") long splitCells;
+        @Label("Zipper Fills") long zipperFills;
+    }
+
+    /** A Diff event that has begun, or null when nobody records it. */
+    static Object begin() {
+        Diff event = new Diff();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object begun, int oldLines, int newLines, DiffMetrics metrics) {
+        Diff event = (Diff) begun;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.oldLines = oldLines;
+        event.newLines = newLines;
+        event.normalize = metrics.nanos(DiffMetrics.Stage.NORMALIZE);
+        event.anchorDiff = metrics.nanos(DiffMetrics.Stage.ANCHORS);
+        event.candidates = metrics.nanos(DiffMetrics.Stage.CANDIDATES);
+        event.resolve = metrics.nanos(DiffMetrics.Stage.RESOLVE);
+        event.splits = metrics.nanos(DiffMetrics.Stage.SPLITS);
+        event.zipper = metrics.nanos(DiffMetrics.Stage.ZIPPER);
+        event.anchors = metrics.anchors;
+        event.hammingComparisons = metrics.hammingComparisons;
+        event.levenshteinCalls = metrics.levenshteinCalls;
+        event.levenshteinCells = metrics.levenshteinCells;
+        event.contextVectors = metrics.contextVectors;
+        event.splitAttempts = metrics.splitAttempts;
+        event.splitCells = metrics.splitCells;
+        event.zipperFills = metrics.zipperFills;
+        event.commit();
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Where the time of one diff went: wall time per pipeline stage and work counters.
+ *
+ * Every LineMapping produced by LHDiffEngine carries one (see {@link LineMapping#metrics}).
+ * In gap-local mode (GapPipeline) the Steps 3 to 5 times are summed over all gaps, so
+ * with several threads they can add up to more than the diff's wall time. Counters are
+ * written by the pipeline while it runs; read them once the diff has returned.
+ */
+public final class DiffMetrics {
+
+    /** Pipeline stages in the order they run. */
+    public enum Stage {
+        NORMALIZE,   // reading and normalizing the input lines (Step 1)
+        ANCHORS,     // anchor diff of the normalized lines (Step 2)
+        CANDIDATES,  // SimHashes and candidate search (Step 3)
+        RESOLVE,     // candidate scoring and assignment (Step 4)
+        SPLITS,      // line split detection (Step 5)
+        ZIPPER       // assembling the mapping and filling equal-sized gaps (Step 6)
+    }
+
+    // Whether jdk.jfr is there to record DiffEvents.Diff events
+    static final boolean JFR_AVAILABLE = jfrAvailable();
+
+    public final long[] stageNanos = new long[Stage.values().length];
+    public long totalNanos;
+    public long linesNormalized;      // old plus new lines read and normalized for this diff
+    public long anchors;              // line pairs matched by the anchor diff
+    public long hammingComparisons;   // SimHash distances computed in Step 3
+    public long levenshteinCalls;     // Step 4 content distances
+    public long levenshteinCells;     // DP cells behind them (a bit-parallel word step counts its width)
+    public long contextVectors;       // Step 4 context vectors, one per line and file
+    public long splitAttempts;        // Step 5 start lines tried
+    public long splitCells;           // DP cells of the Step 5 runs
+    public long zipperFills;          // lines mapped by the Step 6 zipper
+
+    public long nanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    /** Adds the time since {@code startNanos} to the stage and returns the current time. */
+    public long lap(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - startNanos;
+        return now;
+    }
+
+    /** Adds all times and counters of {@code other}; safe to call from several threads. */
+    public synchronized void add(DiffMetrics other) {
+        for (int s = 0; s < stageNanos.length; s++) stageNanos[s] += other.stageNanos[s];
+        totalNanos += other.totalNanos;
+        linesNormalized += other.linesNormalized;
+        anchors += other.anchors;
+        hammingComparisons += other.hammingComparisons;
+        levenshteinCalls += other.levenshteinCalls;
+        levenshteinCells += other.levenshteinCells;
+        contextVectors += other.contextVectors;
+        splitAttempts += other.splitAttempts;
+        splitCells += other.splitCells;
+        zipperFills += other.zipperFills;
+    }
+
+    synchronized void addLevenshtein(long calls, long cells) {
+        levenshteinCalls += calls;
+        levenshteinCells += cells;
+    }
+
+    /** One JSON object: {"totalNanos":..., "stageNanos":{...}, "counters":{...}}. */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"totalNanos\":").append(totalNanos).append(",\"stageNanos\":{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) json.append(',');
+            json.append('"').append(stage.name().toLowerCase()).append("\":").append(nanos(stage));
+        }
+        return json.append("},\"counters\":{")
+                .append("\"linesNormalized\":").append(linesNormalized)
+                .append(",\"anchors\":").append(anchors)
+                .append(",\"hammingComparisons\":").append(hammingComparisons)
+                .append(",\"levenshteinCalls\":").append(levenshteinCalls)
+                .append(",\"levenshteinCells\":").append(levenshteinCells)
+                .append(",\"contextVectors\":").append(contextVectors)
+                .append(",\"splitAttempts\":").append(splitAttempts)
+                .append(",\"splitCells\":").append(splitCells)
+                .append(",\"zipperFills\":").append(zipperFills)
+                .append("}}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
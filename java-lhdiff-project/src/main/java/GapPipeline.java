@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps 3 to 5 run separately inside every gap between two consecutive Step 2 anchors.
+ *
+ * The old lines between two anchors can only be matched to the new lines between the
+ * same two anchors, so the cost is a sum of per-gap squares instead of one square over
+ * all unmapped lines. Each gap is cut out of both files as a LineSnapshot slice. The
+ * slices keep the whole-file SimHashes, and a margin of context lines around the gap
+ * keeps the Step 4 context vectors of the gap's lines the same as in the whole-file
+ * pipeline. Gaps are independent and are spread over a
+ * work-stealing pool; their results are merged in gap order, so the output does not
+ * depend on the number of threads.
+ *
+ * Lines that moved into a different gap cannot be found this way. With the cross-gap
+ * pass enabled, Steps 3 to 5 run once more over the whole files for the lines that
+ * are still unmapped afterwards.
+ */
+public final class GapPipeline {
+    private final int windowSize;
+    private final int candidateLimit;
+    private final MappingResolver resolver;
+    private final Step5LineSplitDetector splitDetector;
+    private final boolean crossGapPass;
+    private final ForkJoinPool pool;
+
+    /** Step 4 matches and Step 5 splits, indexed like the whole old file. */
+    public static final class Result {
+        public final int[] step4Matches;
+        public final Step5LineSplitDetector.Splits splits;
+
+        Result(int[] step4Matches, Step5LineSplitDetector.Splits splits) {
+            this.step4Matches = step4Matches;
+            this.splits = splits;
+        }
+    }
+
+    /** @param pool pool the gaps are spread over; null for the common pool */
+    public GapPipeline(int windowSize, int candidateLimit, MappingResolver resolver,
+                       Step5LineSplitDetector splitDetector, boolean crossGapPass, ForkJoinPool pool) {
+        this.windowSize = windowSize;
+        this.candidateLimit = candidateLimit;
+        this.resolver = resolver;
+        this.splitDetector = splitDetector;
+        this.crossGapPass = crossGapPass;
+        this.pool = pool;
+    }
+
+    /** Runs Steps 3 to 5; matched lines are cleared from step2's unmapped sets. */
+    public Result run(LineSnapshot oldSnapshot, LineSnapshot newSnapshot, Step2Result step2) {
+        return run(oldSnapshot, newSnapshot, step2, new DiffMetrics());
+    }
+
+    /** Same, adding the Steps 3 to 5 times and counters of every gap to {@code metrics}. */
+    public Result run(LineSnapshot oldSnapshot, LineSnapshot newSnapshot, Step2Result step2, DiffMetrics metrics) {
+        int[] step4Matches = new int[oldSnapshot.size()];
+        Arrays.fill(step4Matches, -1);
+        Step5LineSplitDetector.Splits splits = new Step5LineSplitDetector.Splits(oldSnapshot.size());
+        // Make sure both whole-file SimHash arrays exist before the slices share them
+        long t = System.nanoTime();
+        oldSnapshot.lineSimhashes(windowSize);
+        newSnapshot.lineSimhashes(windowSize);
+        metrics.lap(DiffMetrics.Stage.CANDIDATES, t);
+
+        int gaps = step2.anchorCount() + 1;
+        // Each gap writes only its own old lines; the unmapped sets are updated afterwards
+        (pool != null ? pool : ForkJoinPool.commonPool())
+                .invoke(new GapTask(0, gaps, oldSnapshot, newSnapshot, step2, step4Matches, splits, metrics));
+
+        for (int i = 0; i < step4Matches.length; i++) {
+            if (step4Matches[i] >= 0) {
+                step2.unmappedOld.clear(i);
+                step2.unmappedNew.clear(step4Matches[i]);
+            } else if (splits.isSplit(i)) {
+                step2.unmappedOld.clear(i);
+                step2.unmappedNew.clear(splits.start[i], splits.end[i] + 1);
+            }
+        }
+
+        if (crossGapPass) {
+            t = System.nanoTime();
+            CandidateTable candidates = SimhashGenerator.LineSimhash.generateCandidates(
+                    oldSnapshot.lineSimhashes(windowSize), newSnapshot.lineSimhashes(windowSize),
+                    step2.unmappedOld, step2.unmappedNew, candidateLimit);
+            metrics.hammingComparisons += candidates.comparisons;
+            t = metrics.lap(DiffMetrics.Stage.CANDIDATES, t);
+            int[] moved = resolver.resolveCandidates(oldSnapshot, newSnapshot, step2.symbols, candidates,
+                    step2.unmappedOld, step2.unmappedNew, metrics);
+            t = metrics.lap(DiffMetrics.Stage.RESOLVE, t);
+            Step5LineSplitDetector.Splits movedSplits = splitDetector.detectSplits(oldSnapshot, newSnapshot,
+                    step2.symbols, step2.anchorOld, step2.anchorNew, step2.unmappedOld, step2.unmappedNew, metrics);
+            metrics.lap(DiffMetrics.Stage.SPLITS, t);
+            for (int i = 0; i < step4Matches.length; i++) {
+                if (moved[i] >= 0) step4Matches[i] = moved[i];
+                if (movedSplits.isSplit(i)) {
+                    splits.start[i] = movedSplits.start[i];
+                    splits.end[i] = movedSplits.end[i];
+                }
+            }
+        }
+        return new Result(step4Matches, splits);
+    }
+
+    // Runs gaps [from, to), halving the range until one gap is left
+    private final class GapTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final LineSnapshot oldSnapshot;
+        private final LineSnapshot newSnapshot;
+        private final Step2Result step2;
+        private final int[] step4Matches;
+        private final Step5LineSplitDetector.Splits splits;
+        private final DiffMetrics metrics;
+
+        GapTask(int from, int to, LineSnapshot oldSnapshot, LineSnapshot newSnapshot, Step2Result step2,
+                int[] step4Matches, Step5LineSplitDetector.Splits splits, DiffMetrics metrics) {
+            this.from = from;
+            this.to = to;
+            this.oldSnapshot = oldSnapshot;
+            this.newSnapshot = newSnapshot;
+            this.step2 = step2;
+            this.step4Matches = step4Matches;
+            this.splits = splits;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new GapTask(from, mid, oldSnapshot, newSnapshot, step2, step4Matches, splits, metrics),
+                        new GapTask(mid, to, oldSnapshot, newSnapshot, step2, step4Matches, splits, metrics));
+            } else if (from < to) {
+                runGap(from, oldSnapshot, newSnapshot, step2, step4Matches, splits, metrics);
+            }
+        }
+    }
+
+    private void runGap(int g, LineSnapshot oldSnapshot, LineSnapshot newSnapshot, Step2Result step2,
+                        int[] step4Matches, Step5LineSplitDetector.Splits splits, DiffMetrics metrics) {
+        int oldFrom = g == 0 ? 0 : step2.anchorOld[g - 1] + 1;
+        int oldTo = g == step2.anchorCount() ? oldSnapshot.size() : step2.anchorOld[g];
+        int newFrom = g == 0 ? 0 : step2.anchorNew[g - 1] + 1;
+        int newTo = g == step2.anchorCount() ? newSnapshot.size() : step2.anchorNew[g];
+        if (oldFrom >= oldTo || newFrom >= newTo) return;
+        // Gaps run in parallel, so each counts into its own metrics first
+        DiffMetrics gap = new DiffMetrics();
+        long t = System.nanoTime();
+
+        // Slices reach past the gap far enough for every context vector window: the
+        // resolver builds context vectors from the slice's own lines (SimHashes are
+        // copied from the whole file and do not need the margin)
+        int margin = Math.max(windowSize, MappingResolver.CONTEXT_WINDOW_SIZE);
+        int oldStart = Math.max(0, oldFrom - margin);
+        int oldEnd = Math.min(oldSnapshot.size(), oldTo + margin);
+        int newStart = Math.max(0, newFrom - margin);
+        int newEnd = Math.min(newSnapshot.size(), newTo + margin);
+        LineSnapshot oldSlice = oldSnapshot.slice(oldStart, oldEnd, windowSize);
+        LineSnapshot newSlice = newSnapshot.slice(newStart, newEnd, windowSize);
+        LineSymbols symbols = step2.symbols.slice(oldStart, oldEnd, newStart, newEnd);
+
+        // Only the gap's own lines are open for matching; the margins are context
+        BitSet unmappedOld = new BitSet(oldEnd - oldStart);
+        unmappedOld.set(oldFrom - oldStart, oldTo - oldStart);
+        BitSet unmappedNew = new BitSet(newEnd - newStart);
+        unmappedNew.set(newFrom - newStart, newTo - newStart);
+
+        CandidateTable candidates = SimhashGenerator.LineSimhash.generateCandidates(
+                oldSlice.lineSimhashes(windowSize), newSlice.lineSimhashes(windowSize),
+                unmappedOld, unmappedNew, candidateLimit);
+        gap.hammingComparisons = candidates.comparisons;
+        t = gap.lap(DiffMetrics.Stage.CANDIDATES, t);
+        int[] matches = resolver.resolveCandidates(oldSlice, newSlice, symbols, candidates, unmappedOld, unmappedNew,
+                gap);
+        t = gap.lap(DiffMetrics.Stage.RESOLVE, t);
+        Step5LineSplitDetector.Splits gapSplits = splitDetector.detectSplits(oldSlice, newSlice, symbols,
+                null, null, unmappedOld, unmappedNew, gap);
+        gap.lap(DiffMetrics.Stage.SPLITS, t);
+        metrics.add(gap);
+
+        for (int local = oldFrom - oldStart; local < oldTo - oldStart; local++) {
+            int i = oldStart + local;
+            if (matches[local] >= 0) step4Matches[i] = newStart + matches[local];
+            if (gapSplits.isSplit(local)) {
+                splits.start[i] = newStart + gapSplits.start[local];
+                splits.end[i] = newStart + gapSplits.end[local];
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Reads blobs from a local git repository through one long-running
+ * {@code git cat-file --batch} process, so no revision has to be checked out or
+ * written to a temporary file. Reads are serialized; the process is shared by all
+ * callers until {@link #close}.
+ */
+public final class GitBlobSource implements Closeable {
+    private final Process process;
+    private final OutputStream requests;
+    private final InputStream responses;
+
+    public GitBlobSource(Path repository) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder("git", "cat-file", "--batch");
+        pb.directory(repository.toFile());
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = pb.start();
+        requests = new BufferedOutputStream(process.getOutputStream());
+        responses = new BufferedInputStream(process.getInputStream(), 1 << 16);
+    }
+
+    /** Content of {@code object}: a blob id or any name git resolves, such as "HEAD:src/A.java". */
+    public synchronized byte[] read(String object) throws IOException {
+        if (object.indexOf('\n') >= 0) throw new IOException("Invalid object name: " + object);
+        requests.write((object + "\n").getBytes(StandardCharsets.UTF_8));
+        requests.flush();
+
+        // "<id> <type> <size>", or "<name> missing"
+        String header = readLine();
+        String[] fields = header.split(" ");
+        if (fields.length != 3) throw new IOException("git cat-file: " + header);
+        int size = Integer.parseInt(fields[2]);
+        if (!fields[1].equals("blob")) {
+            // Drain the object and its newline, or the next read would start inside it
+            skip(size + 1L, object);
+            throw new IOException(object + " is a " + fields[1] + ", not a blob");
+        }
+        byte[] content = new byte[size];
+        int read = 0;
+        while (read < content.length) {
+            int n = responses.read(content, read, content.length - read);
+            if (n < 0) throw new EOFException("git cat-file ended inside " + object);
+            read += n;
+        }
+        if (responses.read() != '\n') throw new IOException("git cat-file: malformed output after " + object);
+        return content;
+    }
+
+    /** The blob as a snapshot, decoded as UTF-8 like a file on disk. */
+    public LineSnapshot snapshot(String object) throws IOException {
+        return LineSnapshot.create(null, LineSnapshot.decodeLines(ByteBuffer.wrap(read(object))));
+    }
+
+    /** Same, through the engine's snapshot cache when it has one. */
+    public LineSnapshot snapshot(String object, LHDiffEngine engine) throws IOException {
+        return engine.snapshot(null, ByteBuffer.wrap(read(object)));
+    }
+
+    private void skip(long count, String object) throws IOException {
+        while (count > 0) {
+            long n = responses.skip(count);
+            if (n <= 0) {
+                if (responses.read() < 0) throw new EOFException("git cat-file ended inside " + object);
+                n = 1;
+            }
+            count -= n;
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(96);
+        int b;
+        while ((b = responses.read()) != '\n') {
+            if (b < 0) throw new EOFException("git cat-file exited");
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        requests.close();
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
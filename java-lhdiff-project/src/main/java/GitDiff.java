@@ -0,0 +1,103 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Diffs every modified file of a commit, or between two commits, straight from the
+ * repository: {@code git diff-tree} lists the changed blobs and one GitBlobSource reads
+ * them. The pairs run in parallel on a work-stealing pool, as in TreeDiff.
+ */
+public final class GitDiff {
+    private final LHDiffEngine engine;
+    private final Path repository;
+    private final String suffix;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param suffix only paths ending with this are diffed, e.g. ".java"
+     * @param pool pool the pairs are spread over; null for the common pool
+     */
+    public GitDiff(LHDiffEngine engine, Path repository, String suffix, ForkJoinPool pool) {
+        this.engine = engine;
+        this.repository = repository;
+        this.suffix = suffix;
+        this.pool = pool;
+    }
+
+    /** @param revisions a commit (diffed against its first parent) or a range "a..b" */
+    public TreeDiff.Result run(String revisions) throws IOException {
+        long start = System.nanoTime();
+        List<String[]> changes = modifiedBlobs(revisions);
+        List<TreeDiff.FileResult> files;
+        try (GitBlobSource blobs = new GitBlobSource(repository)) {
+            files = TreeDiff.diffAll(changes, change -> diffBlobs(blobs, change), pool);
+        }
+        return new TreeDiff.Result(files, System.nanoTime() - start);
+    }
+
+    private TreeDiff.FileResult diffBlobs(GitBlobSource blobs, String[] change) {
+        try {
+            LineSnapshot oldSnapshot = blobs.snapshot(change[0], engine);
+            LineSnapshot newSnapshot = blobs.snapshot(change[1], engine);
+            LineMapping mapping = engine.diff(oldSnapshot, newSnapshot);
+            return new TreeDiff.FileResult(change[2], TreeDiff.Status.MODIFIED, mapping,
+                    oldSnapshot.size() + newSnapshot.size(), null);
+        } catch (IOException | RuntimeException e) {
+            return new TreeDiff.FileResult(change[2], TreeDiff.Status.FAILED, null, 0, e.toString());
+        }
+    }
+
+    // {old blob, new blob, path} of every modified file, in git's path order
+    private List<String[]> modifiedBlobs(String revisions) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("diff-tree");
+        command.add("-r");
+        command.add("-z");
+        command.add("--no-abbrev");
+        command.add("--no-commit-id");
+        command.add("--no-renames");
+        int range = revisions.indexOf("..");
+        if (range >= 0) {
+            command.add(revisions.substring(0, range));
+            command.add(revisions.substring(range + 2));
+        } else {
+            command.add("--root");
+            command.add(revisions);
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(repository.toFile());
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = pb.start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) bytes.write(buffer, 0, n);
+            output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+        try {
+            if (process.waitFor() != 0) throw new IOException("git diff-tree failed for " + revisions);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing " + revisions, e);
+        }
+
+        // Records are ":<old mode> <new mode> <old id> <new id> <status>\0<path>\0"
+        List<String[]> changes = new ArrayList<>();
+        String[] fields = output.split("\0");
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            String[] meta = fields[i].split(" ");
+            String path = fields[i + 1];
+            if (meta.length == 5 && meta[4].equals("M") && path.endsWith(suffix)) {
+                changes.add(new String[] { meta[2], meta[3], path });
+            }
+        }
+        return changes;
+    }
+}
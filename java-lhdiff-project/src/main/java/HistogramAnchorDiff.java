@@ -0,0 +1,109 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Histogram diff (the patience-diff refinement used by JGit) over interned line ids.
+ *
+ * For each region the old side's lines are counted, and the longest common run that
+ * contains the rarest line still present on both sides becomes the split point; the
+ * parts before and after it are handled the same way. Rare lines such as method
+ * signatures anchor the match, so heavily rewritten files do not degenerate into the
+ * long, repetitive edit scripts that Myers produces around "}" and blank lines.
+ * Regions whose rarest common line occurs more than {@link #MAX_CHAIN} times fall back
+ * to Myers.
+ */
+public final class HistogramAnchorDiff implements AnchorDiff {
+    private static final int MAX_CHAIN = 64;
+
+    @Override
+    public int[] match(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+
+        int alphabet = 0;
+        for (int id : a) alphabet = Math.max(alphabet, id + 1);
+        for (int id : b) alphabet = Math.max(alphabet, id + 1);
+        // Per-region occurrence chains over the old side, indexed by line id. stamp marks
+        // which region the count/head entries belong to, so they are never cleared.
+        int[] stamp = new int[alphabet];
+        int[] count = new int[alphabet];
+        int[] head = new int[alphabet];
+        int[] next = new int[a.length];
+        int region = 0;
+
+        Deque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] { 0, a.length, 0, b.length });
+        while (!work.isEmpty()) {
+            int[] r = work.pop();
+            int aLo = r[0], aHi = r[1], bLo = r[2], bHi = r[3];
+
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) match[aLo++] = bLo++;
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) match[--aHi] = --bHi;
+            if (aLo == aHi || bLo == bHi) continue;
+
+            region++;
+            for (int i = aHi - 1; i >= aLo; i--) {
+                int id = a[i];
+                if (stamp[id] != region) {
+                    stamp[id] = region;
+                    count[id] = 0;
+                    head[id] = -1;
+                }
+                count[id]++;
+                next[i] = head[id];
+                head[id] = i;
+            }
+
+            int bestLow = MAX_CHAIN + 1;
+            int bestLen = 0;
+            int bestA = -1, bestB = -1;
+            boolean anyCommon = false;
+            for (int j = bLo; j < bHi; j++) {
+                int id = b[j];
+                if (stamp[id] != region) continue;
+                anyCommon = true;
+                if (count[id] > MAX_CHAIN || count[id] > bestLow) continue;
+                for (int i = head[id]; i >= 0; i = next[i]) {
+                    // Extend the common run around (i, j) within the region
+                    int as = i, bs = j;
+                    while (as > aLo && bs > bLo && a[as - 1] == b[bs - 1]) {
+                        as--;
+                        bs--;
+                    }
+                    int ae = i + 1, be = j + 1;
+                    while (ae < aHi && be < bHi && a[ae] == b[be]) {
+                        ae++;
+                        be++;
+                    }
+                    int low = MAX_CHAIN + 1;
+                    for (int k = as; k < ae; k++) low = Math.min(low, count[a[k]]);
+                    int len = ae - as;
+                    if (low < bestLow || (low == bestLow && len > bestLen)) {
+                        bestLow = low;
+                        bestLen = len;
+                        bestA = as;
+                        bestB = bs;
+                    }
+                }
+            }
+
+            if (bestA < 0) {
+                if (anyCommon) matchWithMyers(a, aLo, aHi, b, bLo, bHi, match);
+                continue;
+            }
+            for (int k = 0; k < bestLen; k++) match[bestA + k] = bestB + k;
+            work.push(new int[] { bestA + bestLen, aHi, bestB + bestLen, bHi });
+            work.push(new int[] { aLo, bestA, bLo, bestB });
+        }
+        return match;
+    }
+
+    // Only common lines that are too frequent to index are left: match the region with Myers.
+    private static void matchWithMyers(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, int[] match) {
+        int[] sub = new IntMyersDiff().match(Arrays.copyOfRange(a, aLo, aHi), Arrays.copyOfRange(b, bLo, bHi));
+        for (int k = 0; k < sub.length; k++) {
+            if (sub[k] >= 0) match[aLo + k] = bLo + sub[k];
+        }
+    }
+}
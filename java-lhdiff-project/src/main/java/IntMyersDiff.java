@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Myers' greedy O(ND) diff over interned line ids.
+ *
+ * This follows java-diff-utils' MyersDiff step for step (same diagonal order and
+ * tie-breaking), so it finds exactly the same edit path as DiffUtils.diff on the
+ * normalized strings, but compares lines with a single int comparison. This is the
+ * default anchor diff.
+ */
+public final class IntMyersDiff implements AnchorDiff {
+
+    @Override
+    public int[] match(int[] oldIds, int[] newIds) {
+        int[] match = new int[oldIds.length];
+        Arrays.fill(match, -1);
+        int oldIndex = 0;
+        int newIndex = 0;
+        for (int[] change : computeChanges(oldIds, newIds)) {
+            for (; oldIndex < change[0]; oldIndex++, newIndex++) match[oldIndex] = newIndex;
+            oldIndex = change[1];
+            newIndex = change[3];
+        }
+        for (; oldIndex < oldIds.length && newIndex < newIds.length; oldIndex++, newIndex++) match[oldIndex] = newIndex;
+        return match;
+    }
+
+    // One step of the edit path; non-snake nodes link straight back to the previous snake.
+    private static final class Node {
+        final int i;
+        final int j;
+        final boolean snake;
+        final boolean bootstrap;
+        final Node prev;
+
+        Node(int i, int j, boolean snake, boolean bootstrap, Node prev) {
+            this.i = i;
+            this.j = j;
+            this.snake = snake;
+            this.bootstrap = bootstrap;
+            this.prev = snake ? prev : previousSnake(prev);
+        }
+
+        private static Node previousSnake(Node node) {
+            while (node != null) {
+                if (node.bootstrap) return null;
+                if (node.snake || node.prev == null) return node;
+                node = node.prev;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Computes the changed regions between {@code orig} and {@code rev}.
+     * @return changes in ascending order, each as {startOld, endOld, startNew, endNew} (end exclusive)
+     */
+    public static List<int[]> computeChanges(int[] orig, int[] rev) {
+        return buildRevision(buildPath(orig, rev));
+    }
+
+    private static Node buildPath(int[] orig, int[] rev) {
+        final int n = orig.length;
+        final int m = rev.length;
+        final int max = n + m + 1;
+        final int size = 1 + 2 * max;
+        final int middle = size / 2;
+        final Node[] diagonal = new Node[size];
+
+        diagonal[middle + 1] = new Node(0, -1, true, true, null);
+        for (int d = 0; d < max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                final int kmiddle = middle + k;
+                final int kplus = kmiddle + 1;
+                final int kminus = kmiddle - 1;
+                Node prev;
+                int i;
+
+                if ((k == -d) || (k != d && diagonal[kminus].i < diagonal[kplus].i)) {
+                    i = diagonal[kplus].i;
+                    prev = diagonal[kplus];
+                } else {
+                    i = diagonal[kminus].i + 1;
+                    prev = diagonal[kminus];
+                }
+                diagonal[kminus] = null;
+
+                int j = i - k;
+                Node node = new Node(i, j, false, false, prev);
+                while (i < n && j < m && orig[i] == rev[j]) {
+                    i++;
+                    j++;
+                }
+                if (i != node.i) {
+                    node = new Node(i, j, true, false, node);
+                }
+                diagonal[kmiddle] = node;
+
+                if (i >= n && j >= m) {
+                    return node;
+                }
+            }
+            diagonal[middle + d - 1] = null;
+        }
+        throw new IllegalStateException("could not find a diff path");
+    }
+
+    private static List<int[]> buildRevision(Node path) {
+        List<int[]> changes = new ArrayList<>();
+        if (path.snake) {
+            path = path.prev;
+        }
+        while (path != null && path.prev != null && path.prev.j >= 0) {
+            int i = path.i;
+            int j = path.j;
+            path = path.prev;
+            changes.add(new int[] { path.i, i, path.j, j });
+            if (path.snake) {
+                path = path.prev;
+            }
+        }
+        // The path is walked from the end, so the changes come out last-to-first.
+        Collections.reverse(changes);
+        return changes;
+    }
+}
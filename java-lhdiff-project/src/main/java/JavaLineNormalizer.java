@@ -1,23 +1,155 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 public class JavaLineNormalizer {
+    // Bump whenever normalizeLine's output changes; cached normalized lines are keyed by it.
+    public static final int VERSION = 1;
+
+    // States a line can start in; a text block never opens inside a block comment or vice versa.
+    public static final int STATE_CODE = 0;
+    public static final int STATE_BLOCK_COMMENT = 1;
+    public static final int STATE_TEXT_BLOCK = 2;
+    private static final int STATE_COUNT = 3;
+
+    // Inputs below this many lines are normalized sequentially.
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int PARALLEL_CHUNK_LINES = 8_192;
+
     public static class StatefulNormalizer {
+        // Used only for lines holding non-ASCII or control characters, where \b and
+        // String.toLowerCase need the JDK's Unicode rules to keep the output identical.
+        private static final Pattern FUNC_ID = Pattern.compile("\\b[a-zA-Z_][a-zA-Z0-9_]*\\s*\\(");
+        private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+        private static final char[] FUNC_ID_TOKEN = "func_id(".toCharArray();
+
         private boolean inBlockComment = false;
         private boolean inTextBlock = false;
 
+        // Per-line scratch state, reused across calls so normalizing a line allocates only its result.
+        private char[] stripped = new char[128]; // line with comments and ';' removed (fallback input)
+        private int strippedLen;
+        private char[] out = new char[128];      // normalized output being built
+        private int outLen;
+        private boolean simpleAscii;   // every stripped char so far is printable ASCII or \s
+        private boolean pendingSpace;  // whitespace seen since the last output char
+        private boolean inWord;        // inside a run of [A-Za-z0-9_]
+        private boolean wordIsIdent;   // the current run started with [A-Za-z_]
+        private int wordStart;         // where the current run starts in out
+        private int identStart = -1;   // start of an identifier that a following '(' turns into func_id(
+
         public void reset() {
             inBlockComment = false;
             inTextBlock = false;
         }
 
+        /** The cross-line state: STATE_CODE, STATE_BLOCK_COMMENT or STATE_TEXT_BLOCK. */
+        public int state() {
+            if (inBlockComment) return STATE_BLOCK_COMMENT;
+            if (inTextBlock) return STATE_TEXT_BLOCK;
+            return STATE_CODE;
+        }
+
+        public void setState(int state) {
+            inBlockComment = state == STATE_BLOCK_COMMENT;
+            inTextBlock = state == STATE_TEXT_BLOCK;
+        }
+
+        /**
+         * Normalizes one line in a single left-to-right scan: comments are dropped,
+         * ';' is removed, "name (" becomes "func_id(", whitespace is trimmed and
+         * collapsed, and the result is lower-cased. The output is identical to
+         * applying those steps one after another with String.replace/replaceAll.
+         */
         public String normalizeLine(String line) {
             if (line == null) return "";
-            StringBuilder out = new StringBuilder();
+            scanLine(line);
+            if (!simpleAscii) return normalizeWithRegex(new String(stripped, 0, strippedLen));
+            if (outLen == 0) return "BLANK_TOKEN";
+            return new String(out, 0, outLen);
+        }
+
+        /** Same as {@link #normalizeLine} but writes the result straight from the scratch buffer. */
+        public void normalizeLineTo(String line, Writer w) throws IOException {
+            if (line == null) return;
+            scanLine(line);
+            if (!simpleAscii) w.write(normalizeWithRegex(new String(stripped, 0, strippedLen)));
+            else if (outLen == 0) w.write("BLANK_TOKEN");
+            else w.write(out, 0, outLen);
+        }
+
+        /**
+         * Streams every line of {@code in} to {@code w} in normalized form, separated by
+         * {@code separator} (no trailing separator). Only one line is held at a time, so
+         * memory is bounded by the longest line rather than by the size of the input.
+         * Block-comment and text-block state carries across lines as in normalizeLine.
+         */
+        public void normalize(Reader in, Writer w, String separator) throws IOException {
+            BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (!first) w.write(separator);
+                normalizeLineTo(line, w);
+                first = false;
+            }
+        }
+
+        /**
+         * Lazily normalizes the lines of {@code reader}; each call to next() reads and
+         * normalizes one more line. I/O errors surface as UncheckedIOException.
+         */
+        public Iterator<String> normalizedLines(BufferedReader reader) {
+            return new Iterator<String>() {
+                private String nextLine;
+                private boolean done;
+
+                @Override
+                public boolean hasNext() {
+                    if (nextLine != null) return true;
+                    if (done) return false;
+                    try {
+                        nextLine = reader.readLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (nextLine == null) done = true;
+                    return nextLine != null;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    String line = nextLine;
+                    nextLine = null;
+                    return normalizeLine(line);
+                }
+            };
+        }
+
+        private void scanLine(String line) {
+            strippedLen = 0;
+            outLen = 0;
+            simpleAscii = true;
+            pendingSpace = false;
+            inWord = false;
+            identStart = -1;
+
             int len = line.length();
             int i = 0;
             while (i < len) {
@@ -38,7 +170,7 @@ public class JavaLineNormalizer {
                         i += 3;
                         continue;
                     } else {
-                        out.append(c);
+                        emit(c);
                         i++;
                         continue;
                     }
@@ -54,75 +186,211 @@ public class JavaLineNormalizer {
                     i += 3;
                     continue;
                 }
-                if (c == '"') {
-                    out.append(c);
+                if (c == '"' || c == '\'') {
+                    // String or char literal: copied verbatim up to the closing quote
+                    emit(c);
                     i++;
                     while (i < len) {
                         char ch = line.charAt(i);
-                        out.append(ch);
+                        emit(ch);
                         if (ch == '\\') {
-                            if (i + 1 < len) { i++; out.append(line.charAt(i)); }
+                            if (i + 1 < len) { i++; emit(line.charAt(i)); }
                             i++; continue;
                         }
-                        if (ch == '"') { i++; break; }
+                        if (ch == c) { i++; break; }
                         i++;
                     }
                     continue;
                 }
-                if (c == '\'') {
-                    out.append(c);
-                    i++;
-                    while (i < len) {
-                        char ch = line.charAt(i);
-                        out.append(ch);
-                        if (ch == '\\') {
-                            if (i + 1 < len) { i++; out.append(line.charAt(i)); }
-                            i++; continue;
-                        }
-                        if (ch == '\'') { i++; break; }
-                        i++;
-                    }
-                    continue;
-                }
-                out.append(c);
+                emit(c);
                 i++;
             }
-            String result = out.toString();
-            result = result.replace(";", "");
-            // Corrected Regex for function identifiers
-            result = result.replaceAll("\\b[a-zA-Z_][a-zA-Z0-9_]*\\s*\\(", "func_id(");
-            result = result.trim().replaceAll("\\s+", " ");
+            if (inWord) endWord();
+        }
+
+        // Feeds one surviving character through the ';' removal, func_id, whitespace and case rules.
+        private void emit(char c) {
+            if (c == ';') return;
+            if (strippedLen == stripped.length) stripped = Arrays.copyOf(stripped, strippedLen * 2);
+            stripped[strippedLen++] = c;
+
+            if (!simpleAscii) return;
+            if (c >= 0x7F || (c < ' ' && !isRegexSpace(c))) {
+                simpleAscii = false;
+                return;
+            }
+            if (isRegexSpace(c)) {
+                if (inWord) endWord();
+                if (outLen > 0) pendingSpace = true;
+                return;
+            }
+            boolean word = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+            if (word) {
+                if (!inWord) {
+                    flushSpace();
+                    identStart = -1;
+                    inWord = true;
+                    wordIsIdent = c > '9';
+                    wordStart = outLen;
+                }
+                append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+                return;
+            }
+            if (inWord) endWord();
+            if (c == '(' && identStart >= 0) {
+                outLen = identStart;
+                for (char f : FUNC_ID_TOKEN) append(f);
+                pendingSpace = false;
+                identStart = -1;
+                return;
+            }
+            identStart = -1;
+            flushSpace();
+            append(c);
+        }
+
+        private void endWord() {
+            inWord = false;
+            identStart = wordIsIdent ? wordStart : -1;
+        }
+
+        private void flushSpace() {
+            if (pendingSpace) {
+                append(' ');
+                pendingSpace = false;
+            }
+        }
+
+        private void append(char c) {
+            if (outLen == out.length) out = Arrays.copyOf(out, outLen * 2);
+            out[outLen++] = c;
+        }
+
+        // The characters matched by the regex \s
+        private static boolean isRegexSpace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+        }
+
+        private static String normalizeWithRegex(String result) {
+            result = FUNC_ID.matcher(result).replaceAll("func_id(");
+            result = WHITESPACE.matcher(result.trim()).replaceAll(" ");
             result = result.toLowerCase();
             if (result.isEmpty()) return "BLANK_TOKEN";
             return result;
         }
     }
 
-    public static String normalizeFile(Path input) throws IOException {
+    /**
+     * Normalizes all lines with a fresh StatefulNormalizer, in parallel when the input
+     * is large enough and more than one core is available.
+     */
+    public static List<String> normalizeAll(List<String> lines) {
+        if (lines.size() >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+            return normalizeParallel(lines, PARALLEL_CHUNK_LINES);
+        }
         StatefulNormalizer norm = new StatefulNormalizer();
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader r = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
-            String line;
-            boolean first = true;
-            while ((line = r.readLine()) != null) {
-                String n = norm.normalizeLine(line);
-                if (!first) sb.append(System.lineSeparator());
-                sb.append(n);
-                first = false;
+        List<String> result = new ArrayList<>(lines.size());
+        for (String line : lines) result.add(norm.normalizeLine(line));
+        return result;
+    }
+
+    /**
+     * Parallel normalization with the same output as a single sequential StatefulNormalizer.
+     *
+     * The lines are cut into chunks of {@code chunkSize}. Because the state a chunk starts in
+     * is unknown until the chunks before it are done, every chunk is normalized speculatively
+     * from each possible entry state. The runs from a comment or text-block entry stop as soon
+     * as they reach the same state as the STATE_CODE run at a line boundary, since everything
+     * after that point is identical. A sequential prefix scan then composes the chunk exit
+     * states and picks the matching run for each chunk.
+     */
+    public static List<String> normalizeParallel(List<String> lines, int chunkSize) {
+        int n = lines.size();
+        int chunks = (n + chunkSize - 1) / chunkSize;
+        String[] result = new String[n];
+        ChunkRun[][] runs = new ChunkRun[chunks][];
+
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int from = c * chunkSize;
+            int to = Math.min(n, from + chunkSize);
+            runs[c] = normalizeChunk(lines, from, to, result);
+        });
+
+        int state = STATE_CODE;
+        for (int c = 0; c < chunks; c++) {
+            ChunkRun run = runs[c][state];
+            if (state != STATE_CODE) {
+                System.arraycopy(run.prefix, 0, result, c * chunkSize, run.prefix.length);
             }
+            state = run.exitState;
+        }
+        return Arrays.asList(result);
+    }
+
+    // Output of a chunk for one entry state. For non-code entries only the lines before
+    // the run converges with the STATE_CODE run are kept.
+    private static final class ChunkRun {
+        final String[] prefix;
+        final int exitState;
+
+        ChunkRun(String[] prefix, int exitState) {
+            this.prefix = prefix;
+            this.exitState = exitState;
         }
-        return sb.toString();
+    }
+
+    private static ChunkRun[] normalizeChunk(List<String> lines, int from, int to, String[] result) {
+        StatefulNormalizer norm = new StatefulNormalizer();
+        byte[] codeStates = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            result[i] = norm.normalizeLine(lines.get(i));
+            codeStates[i - from] = (byte) norm.state();
+        }
+        int codeExit = norm.state();
+
+        ChunkRun[] runs = new ChunkRun[STATE_COUNT];
+        runs[STATE_CODE] = new ChunkRun(new String[0], codeExit);
+        for (int entry = 0; entry < STATE_COUNT; entry++) {
+            if (entry == STATE_CODE) continue;
+            norm.setState(entry);
+            List<String> prefix = new ArrayList<>();
+            boolean converged = false;
+            for (int i = from; i < to && !converged; i++) {
+                prefix.add(norm.normalizeLine(lines.get(i)));
+                converged = norm.state() == codeStates[i - from];
+            }
+            runs[entry] = new ChunkRun(prefix.toArray(new String[0]), converged ? codeExit : norm.state());
+        }
+        return runs;
+    }
+
+    public static String normalizeFile(Path input) throws IOException {
+        StringWriter sw = new StringWriter();
+        try (BufferedReader r = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            new StatefulNormalizer().normalize(r, sw, System.lineSeparator());
+        }
+        return sw.toString();
     }
     
     public static void normalizeFileTo(Path input, Path output) throws IOException {
-        String normalized = normalizeFile(input);
-        try (BufferedWriter w = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) { w.write(normalized); }
+        try (BufferedReader r = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter w = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            new StatefulNormalizer().normalize(r, w, System.lineSeparator());
+        }
     }
 
     public static void main(String[] args) throws Exception {
         if (args.length < 1) System.exit(2);
         Path in = Path.of(args[0]);
-        if (args.length >= 2) normalizeFileTo(in, Path.of(args[1]));
-        else System.out.println(normalizeFile(in));
+        if (args.length >= 2) {
+            normalizeFileTo(in, Path.of(args[1]));
+            return;
+        }
+        Writer w = new BufferedWriter(new OutputStreamWriter(System.out));
+        try (BufferedReader r = Files.newBufferedReader(in, StandardCharsets.UTF_8)) {
+            new StatefulNormalizer().normalize(r, w, System.lineSeparator());
+        }
+        w.write(System.lineSeparator());
+        w.flush();
     }
-}
\ No newline at end of file
+}
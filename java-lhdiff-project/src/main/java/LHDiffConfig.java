@@ -0,0 +1,95 @@
+/**
+ * Immutable settings of an LHDiffEngine.
+ *
+ * Start from {@link #DEFAULTS}, which reproduces the command-line behaviour, and
+ * derive variants with the {@code with...} methods; every wither returns a new
+ * instance and rejects values the pipeline cannot work with.
+ */
+public final class LHDiffConfig {
+    public static final LHDiffConfig DEFAULTS = new LHDiffConfig(4, 15,
+            MappingResolver.WEIGHT_CONTENT, MappingResolver.WEIGHT_CONTEXT, MappingResolver.SIMILARITY_THRESHOLD,
+            Step5LineSplitDetector.THRESHOLD, Step5LineSplitDetector.DEFAULT_WINDOW, "myers",
+            MappingResolver.Assignment.OLD_ORDER, false, false);
+
+    public final int windowSize;          // context lines on each side for the SimHashes
+    public final int candidateLimit;      // Step 3 candidates kept per old line (k)
+    public final double weightContent;    // Step 4 weight of the content similarity
+    public final double weightContext;    // Step 4 weight of the context similarity
+    public final double matchThreshold;   // lowest Step 4 score that is matched
+    public final double splitThreshold;   // lowest Step 5 similarity that is a split
+    public final int splitWindow;         // Step 5 search reach beyond the anchor gap
+    public final String anchorDiff;       // Step 2 engine, see AnchorDiff.named
+    public final MappingResolver.Assignment assignment;
+    public final boolean gapLocal;        // Steps 3-5 per anchor gap, see GapPipeline
+    public final boolean crossGap;        // with gapLocal: one more pass over the whole files
+
+    private LHDiffConfig(int windowSize, int candidateLimit, double weightContent, double weightContext,
+                         double matchThreshold, double splitThreshold, int splitWindow, String anchorDiff,
+                         MappingResolver.Assignment assignment, boolean gapLocal, boolean crossGap) {
+        this.windowSize = windowSize;
+        this.candidateLimit = candidateLimit;
+        this.weightContent = weightContent;
+        this.weightContext = weightContext;
+        this.matchThreshold = matchThreshold;
+        this.splitThreshold = splitThreshold;
+        this.splitWindow = splitWindow;
+        this.anchorDiff = anchorDiff;
+        this.assignment = assignment;
+        this.gapLocal = gapLocal;
+        this.crossGap = crossGap;
+    }
+
+    public LHDiffConfig withWindowSize(int windowSize) {
+        if (windowSize < 0) throw new IllegalArgumentException("windowSize must not be negative: " + windowSize);
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withCandidateLimit(int candidateLimit) {
+        if (candidateLimit < 1) throw new IllegalArgumentException("candidateLimit must be positive: " + candidateLimit);
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    /** Step 4 score weights; the content weight must be positive. */
+    public LHDiffConfig withWeights(double weightContent, double weightContext) {
+        if (!(weightContent > 0) || !(weightContext >= 0)) {
+            throw new IllegalArgumentException("invalid weights: " + weightContent + ", " + weightContext);
+        }
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withMatchThreshold(double matchThreshold) {
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withSplitThreshold(double splitThreshold) {
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withSplitWindow(int splitWindow) {
+        if (splitWindow < 0) throw new IllegalArgumentException("splitWindow must not be negative: " + splitWindow);
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withAnchorDiff(String anchorDiff) {
+        AnchorDiff.named(anchorDiff); // fails here instead of on the first diff
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withAssignment(MappingResolver.Assignment assignment) {
+        if (assignment == null) throw new IllegalArgumentException("assignment must not be null");
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+
+    public LHDiffConfig withGapLocal(boolean gapLocal, boolean crossGap) {
+        return new LHDiffConfig(windowSize, candidateLimit, weightContent, weightContext, matchThreshold,
+                splitThreshold, splitWindow, anchorDiff, assignment, gapLocal, crossGap);
+    }
+}
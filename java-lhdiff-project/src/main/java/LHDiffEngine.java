@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reusable entry point to the whole pipeline (Steps 1 to 6).
+ *
+ * An engine is configured once and holds no per-diff state, so one instance can serve
+ * any number of diffs from any number of threads. Unlike LHDiffMain it prints nothing
+ * and lets I/O errors propagate.
+ *
+ * With a SnapshotCache, every file or blob read through the engine is normalized and
+ * SimHashed only once across runs, which pays off when the same revisions take part
+ * in many diffs (RevisionTracker, TreeDiff, GitDiff, DiffDaemon).
+ *
+ * Every returned mapping carries the DiffMetrics of its diff. When a Flight Recorder
+ * recording is running, each diff is also recorded as an "lhdiff.Diff" event (DiffEvents).
+ */
+public final class LHDiffEngine {
+    private final LHDiffConfig config;
+    private final LinesMapping linesMapping;
+    private final MappingResolver mappingResolver;
+    private final Step5LineSplitDetector splitDetector;
+    private final GapPipeline gapPipeline;
+    private final SnapshotCache cache;
+
+    public LHDiffEngine() {
+        this(LHDiffConfig.DEFAULTS);
+    }
+
+    public LHDiffEngine(LHDiffConfig config) {
+        this(config, null);
+    }
+
+    /** @param pool pool for the parallel parts of Steps 3 to 5; null for the common pool */
+    public LHDiffEngine(LHDiffConfig config, ForkJoinPool pool) {
+        this(config, pool, null);
+    }
+
+    /** @param cache on-disk cache of normalized lines and SimHashes; null for none */
+    public LHDiffEngine(LHDiffConfig config, ForkJoinPool pool, SnapshotCache cache) {
+        this.config = config;
+        this.cache = cache;
+        this.linesMapping = new LinesMapping(AnchorDiff.named(config.anchorDiff));
+        this.mappingResolver = new MappingResolver(config.assignment, pool,
+                config.weightContent, config.weightContext, config.matchThreshold);
+        this.splitDetector = new Step5LineSplitDetector(config.splitWindow, config.splitThreshold);
+        this.gapPipeline = config.gapLocal
+                ? new GapPipeline(config.windowSize, config.candidateLimit, mappingResolver, splitDetector,
+                        config.crossGap, pool)
+                : null;
+    }
+
+    public LHDiffConfig config() {
+        return config;
+    }
+
+    /** Reads and normalizes a file, through the cache when the engine has one. */
+    public LineSnapshot load(Path file) throws IOException {
+        return cache != null ? cache.load(file, config.windowSize) : LineSnapshot.load(file);
+    }
+
+    // Same for content already in memory; path is null for content that is not a file
+    LineSnapshot snapshot(Path path, ByteBuffer bytes) throws IOException {
+        return cache != null ? cache.load(path, bytes, config.windowSize)
+                : LineSnapshot.create(path, LineSnapshot.decodeLines(bytes));
+    }
+
+    public LineMapping diff(Path oldFile, Path newFile) throws IOException {
+        DiffMetrics metrics = new DiffMetrics();
+        long t = System.nanoTime();
+        LineSnapshot oldSnapshot = load(oldFile);
+        LineSnapshot newSnapshot = load(newFile);
+        return diff(oldSnapshot, newSnapshot, normalized(metrics, t, oldSnapshot, newSnapshot));
+    }
+
+    /** Diffs two file contents; lines end at "\n", "\r" or "\r\n". */
+    public LineMapping diff(String oldContent, String newContent) {
+        DiffMetrics metrics = new DiffMetrics();
+        long t = System.nanoTime();
+        LineSnapshot oldSnapshot = LineSnapshot.fromText(oldContent);
+        LineSnapshot newSnapshot = LineSnapshot.fromText(newContent);
+        return diff(oldSnapshot, newSnapshot, normalized(metrics, t, oldSnapshot, newSnapshot));
+    }
+
+    public LineMapping diff(List<String> oldLines, List<String> newLines) {
+        DiffMetrics metrics = new DiffMetrics();
+        long t = System.nanoTime();
+        LineSnapshot oldSnapshot = LineSnapshot.fromLines(oldLines);
+        LineSnapshot newSnapshot = LineSnapshot.fromLines(newLines);
+        return diff(oldSnapshot, newSnapshot, normalized(metrics, t, oldSnapshot, newSnapshot));
+    }
+
+    /** Diffs two snapshots; a snapshot can take part in any number of diffs. */
+    public LineMapping diff(LineSnapshot oldSnapshot, LineSnapshot newSnapshot) {
+        return diff(oldSnapshot, newSnapshot, new DiffMetrics());
+    }
+
+    /**
+     * Same, adding this diff's stage times and counters to {@code metrics}, which the
+     * returned mapping carries. Callers that read and normalized the snapshots
+     * themselves can record that in it first (Stage.NORMALIZE, linesNormalized).
+     */
+    public LineMapping diff(LineSnapshot oldSnapshot, LineSnapshot newSnapshot, DiffMetrics metrics) {
+        Object event = DiffMetrics.JFR_AVAILABLE ? DiffEvents.begin() : null;
+        long begin = System.nanoTime();
+
+        // 1. Steps 1 & 2: normalized lines (from the snapshots) and anchor diff
+        Step2Result step2 = linesMapping.run(oldSnapshot, newSnapshot);
+        metrics.anchors += step2.anchorCount();
+        long t = metrics.lap(DiffMetrics.Stage.ANCHORS, begin);
+
+        int[] step4Matches;
+        Step5LineSplitDetector.Splits splits;
+        if (gapPipeline != null) {
+            GapPipeline.Result gaps = gapPipeline.run(oldSnapshot, newSnapshot, step2, metrics);
+            step4Matches = gaps.step4Matches;
+            splits = gaps.splits;
+        } else {
+            // 2. Step 3: SimHash candidates for the lines the diff left unmapped
+            CandidateTable candidates = SimhashGenerator.LineSimhash.generateCandidates(
+                    oldSnapshot.lineSimhashes(config.windowSize),
+                    newSnapshot.lineSimhashes(config.windowSize),
+                    step2.unmappedOld,
+                    step2.unmappedNew,
+                    config.candidateLimit);
+            metrics.hammingComparisons += candidates.comparisons;
+            t = metrics.lap(DiffMetrics.Stage.CANDIDATES, t);
+
+            // 3. Step 4: resolve conflicts
+            step4Matches = mappingResolver.resolveCandidates(oldSnapshot, newSnapshot, step2.symbols,
+                    candidates, step2.unmappedOld, step2.unmappedNew, metrics);
+            t = metrics.lap(DiffMetrics.Stage.RESOLVE, t);
+
+            // 4. Step 5: line splits
+            splits = splitDetector.detectSplits(oldSnapshot, newSnapshot, step2.symbols,
+                    step2.anchorOld, step2.anchorNew, step2.unmappedOld, step2.unmappedNew, metrics);
+            t = metrics.lap(DiffMetrics.Stage.SPLITS, t);
+        }
+
+        // 5. Step 6: aggregate and zip up equal-sized gaps
+        t = System.nanoTime();
+        LineMapping mapping = LineMapping.assemble(oldSnapshot, newSnapshot, step2, step4Matches, splits, metrics);
+        long end = metrics.lap(DiffMetrics.Stage.ZIPPER, t);
+        metrics.totalNanos += end - begin;
+        if (event != null) DiffEvents.commit(event, oldSnapshot.size(), newSnapshot.size(), metrics);
+        return mapping;
+    }
+
+    // Records the reading and normalizing of both snapshots, started at startNanos
+    private static DiffMetrics normalized(DiffMetrics metrics, long startNanos,
+                                          LineSnapshot oldSnapshot, LineSnapshot newSnapshot) {
+        metrics.totalNanos += metrics.lap(DiffMetrics.Stage.NORMALIZE, startNanos) - startNanos;
+        metrics.linesNormalized += oldSnapshot.size() + newSnapshot.size();
+        return metrics;
+    }
+}
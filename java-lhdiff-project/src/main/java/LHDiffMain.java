@@ -1,209 +1,158 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.Files;
 import java.util.*;
 
 public class LHDiffMain {
 
+    private static final long DEFAULT_CACHE_BYTES = 256L << 20;
+    private static final int DAEMON_SNAPSHOTS = 256;
+
     public static void main(String[] args) {
-        if (args.length < 2) {
-            System.out.println("Usage: java LHDiffMain <OldFile> <NewFile>");
+        List<String> files = new ArrayList<>();
+        Path cacheDir = null;
+        String anchorDiff = "myers";
+        boolean gapLocal = false;
+        boolean crossGap = false;
+        String format = "text";
+        boolean tree = false;
+        boolean track = false;
+        boolean stats = false;
+        int daemonPort = -1;
+        Path gitRepository = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--anchor-diff") && i + 1 < args.length) {
+                anchorDiff = args[++i];
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = args[++i];
+            } else if (args[i].equals("--daemon") && i + 1 < args.length) {
+                daemonPort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--git") && i + 1 < args.length) {
+                gitRepository = Paths.get(args[++i]);
+            } else if (args[i].equals("--stats")) {
+                stats = true;
+            } else if (args[i].equals("--track")) {
+                track = true;
+            } else if (args[i].equals("--tree")) {
+                tree = true;
+            } else if (args[i].equals("--gap-local")) {
+                gapLocal = true;
+            } else if (args[i].equals("--cross-gap")) {
+                crossGap = true;
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() < (gitRepository != null ? 1 : 2) && daemonPort < 0) {
+            System.out.println("Usage: java LHDiffMain [--cache <dir>] [--anchor-diff myers|histogram|linear] [--gap-local [--cross-gap]] [--format text|xml|binary] [--stats] [--tree] <OldFile|OldDir> <NewFile|NewDir>");
+            System.out.println("       java LHDiffMain [options] --track <Revision1> <Revision2> ...");
+            System.out.println("       java LHDiffMain [options] --git <repository> <commit|from..to>");
+            System.out.println("       java LHDiffMain [options] --daemon <port>");
             return;
         }
 
-        Path oldFile = Paths.get(args[0]);
-        Path newFile = Paths.get(args[1]);
-
         try {
             // --- Initialization ---
-            LinesMapping linesMapping = new LinesMapping();
-            SimhashGenerator simhashGenerator = new SimhashGenerator();
-            MappingResolver mappingResolver = new MappingResolver();
-            Step5LineSplitDetector splitDetector = new Step5LineSplitDetector();
-
-            // 1. Run Step 1 & 2 (Diff)
-            Step2Result step2 = linesMapping.run(oldFile, newFile);
-
-            // Re-read/Normalize
-            List<String> oldNormStrings = new ArrayList<>();
-            List<LinesMapping.SettingLineRecord> oldRecords = readAndGetRecords(oldFile, oldNormStrings);
-
-            List<String> newNormStrings = new ArrayList<>();
-            List<LinesMapping.SettingLineRecord> newRecords = readAndGetRecords(newFile, newNormStrings);
-
-            // Read RAW lines
-            List<String> oldRawLines = Files.readAllLines(oldFile);
-            List<String> newRawLines = Files.readAllLines(newFile);
-
-            // 2. Run Step 3 (Candidate Generation)
-            Set<Integer> mappedOld = new HashSet<>();
-            Set<Integer> mappedNew = new HashSet<>();
-
-            for (int[] pair : step2.anchors) {
-                mappedOld.add(pair[0]); 
-                mappedNew.add(pair[1]);
-            }
-
-            Map<Integer, List<SimhashGenerator.LineSimhash.Candidate>> candidates = SimhashGenerator.LineSimhash
-                    .generateCandidates(
-                            oldNormStrings,
-                            newNormStrings,
-                            mappedOld,
-                            mappedNew,
-                            4, 
-                            15 
-                    );
-
-            // 3. Run Step 4 (Resolve Conflicts)
-            List<MappingResolver.SettingLineRecord> oldRecs4 = convertToResolverRecords(oldRecords);
-            List<MappingResolver.SettingLineRecord> newRecs4 = convertToResolverRecords(newRecords);
-            Map<Integer, List<MappingResolver.Candidate>> resolverCandidates = convertToResolverCandidates(candidates);
-
-            Map<Integer, Integer> step4Matches = mappingResolver.resolveCandidates(
-                    oldRecs4, newRecs4,
-                    oldRawLines, 
-                    newRawLines,
-                    resolverCandidates,
-                    step2.unmappedOld,
-                    step2.unmappedNew);
-
-            // 4. Run Step 5 (Detect Line Splits)
-            Map<Integer, List<Integer>> step5Matches = splitDetector.detectSplits(
-                    oldRecords,
-                    newRecords,
-                    step2.unmappedOld, 
-                    step2.unmappedNew);
-
-            // --- Aggregate Matches ---
-            TreeMap<Integer, String> finalOutput = new TreeMap<>();
-
-            for (int[] pair : step2.anchors) {
-                finalOutput.put(pair[0] + 1, String.valueOf(pair[1] + 1));
-            }
-            for (Map.Entry<Integer, Integer> entry : step4Matches.entrySet()) {
-                finalOutput.put(entry.getKey() + 1, String.valueOf(entry.getValue() + 1));
-            }
-            for (Map.Entry<Integer, List<Integer>> entry : step5Matches.entrySet()) {
-                List<Integer> targets = entry.getValue();
-                Collections.sort(targets);
-                String val = (targets.size() == 1) ? 
-                    String.valueOf(targets.get(0) + 1) : 
-                    (targets.get(0) + 1) + "-" + (targets.get(targets.size() - 1) + 1);
-                finalOutput.put(entry.getKey() + 1, val);
-            }
-
-            // 5. Run Step 6 (Zipper)
-            runZipperPass(finalOutput, oldRecords.size(), newRecords.size());
-
-            // --- FINAL OUTPUT GENERATION (Format: "1 -> 1") ---
-            
-            // Print Mappings and Deletions
-            for (int i = 1; i <= oldRecords.size(); i++) {
-                String oldRaw = oldRawLines.get(i - 1);
-                if (oldRaw.trim().isEmpty()) continue; 
-
-                if (finalOutput.containsKey(i)) {
-                    // CHANGE: Output format changed to " -> "
-                    System.out.println(i + " -> " + finalOutput.get(i));
-                } else {
-                    // CHANGE: Output format changed to " -> "
-                    System.out.println(i + " -> -1"); 
+            LHDiffConfig config = LHDiffConfig.DEFAULTS
+                    .withAnchorDiff(anchorDiff)
+                    .withGapLocal(gapLocal, crossGap);
+            // With --cache, every mode reads its files and blobs through the snapshot cache
+            SnapshotCache cache = cacheDir != null ? new SnapshotCache(cacheDir, DEFAULT_CACHE_BYTES) : null;
+            LHDiffEngine engine = new LHDiffEngine(config, null, cache);
+            MappingWriter writer = MappingWriter.named(format);
+
+            if (daemonPort >= 0) {
+                // Serve diffs on the loopback interface until the process is stopped
+                try (DiffDaemon daemon = new DiffDaemon(engine, writer, daemonPort, DAEMON_SNAPSHOTS)) {
+                    System.err.println("LHDiff daemon listening on 127.0.0.1:" + daemon.port());
+                    daemon.serve();
                 }
+                return;
             }
 
-            // Calculate mapped new indices
-            Set<Integer> mappedNewIndices = new HashSet<>();
-            for (String val : finalOutput.values()) {
-                if (val.contains("-")) {
-                    String[] parts = val.split("-");
-                    int start = Integer.parseInt(parts[0]);
-                    int end = Integer.parseInt(parts[1]);
-                    for (int k = start; k <= end; k++)
-                        mappedNewIndices.add(k);
-                } else {
-                    mappedNewIndices.add(Integer.parseInt(val));
-                }
+            if (gitRepository != null) {
+                // Every modified .java file of a commit or range, read from the object store
+                printFiles(new GitDiff(engine, gitRepository, ".java", null).run(files.get(0)), writer, stats);
+                return;
             }
 
-            // Print Added lines
-            for (int j = 1; j <= newRecords.size(); j++) {
-                String newRaw = newRawLines.get(j - 1);
-                if (newRaw.trim().isEmpty()) continue;
-
-                if (!mappedNewIndices.contains(j)) {
-                    // CHANGE: Output format changed to " -> "
-                    System.out.println("-1 -> " + j);
+            if (track) {
+                // Every line of the first revision, followed through all later ones (1-based, -1 once gone)
+                List<Path> revisions = new ArrayList<>();
+                for (String file : files) revisions.add(Paths.get(file));
+                RevisionTracker.History history = new RevisionTracker(engine).track(revisions);
+                int[][] table = history.table(0);
+                StringBuilder out = new StringBuilder();
+                for (int i = 0; i < history.size(0); i++) {
+                    if (history.steps.get(0).oldBlank.get(i)) continue;
+                    out.append(i + 1);
+                    for (int k = 1; k < table.length; k++) {
+                        out.append(" -> ").append(table[k][i] < 0 ? -1 : table[k][i] + 1);
+                    }
+                    out.append(System.lineSeparator());
+                }
+                System.out.print(out);
+                if (stats) {
+                    DiffMetrics total = new DiffMetrics();
+                    for (LineMapping step : history.steps) total.add(step.metrics);
+                    System.err.println(total.toJson());
                 }
+                return;
             }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+            Path oldFile = Paths.get(files.get(0));
+            Path newFile = Paths.get(files.get(1));
 
-    private static void runZipperPass(TreeMap<Integer, String> mapping, int maxOld, int maxNew) {
-        List<int[]> anchors = new ArrayList<>();
-        anchors.add(new int[]{0, 0}); 
-
-        for (Map.Entry<Integer, String> entry : mapping.entrySet()) {
-            String val = entry.getValue();
-            if (!val.contains("-")) {
-                anchors.add(new int[]{entry.getKey(), Integer.parseInt(val)});
+            if (tree) {
+                // Every .java file pair of two source trees, on the common pool
+                printFiles(new TreeDiff(engine, ".java", null).run(oldFile, newFile), writer, stats);
+                return;
             }
-        }
-        anchors.add(new int[]{maxOld + 1, maxNew + 1});
-        anchors.sort(Comparator.comparingInt(a -> a[0]));
 
-        for (int i = 0; i < anchors.size() - 1; i++) {
-            int[] curr = anchors.get(i);
-            int[] next = anchors.get(i+1);
+            // Read and normalize each file once; every stage shares these snapshots.
+            // With --cache, known revisions come back with their SimHashes precomputed.
+            DiffMetrics metrics = new DiffMetrics();
+            long start = System.nanoTime();
+            LineSnapshot oldSnapshot = engine.load(oldFile);
+            LineSnapshot newSnapshot = engine.load(newFile);
+            metrics.totalNanos = metrics.lap(DiffMetrics.Stage.NORMALIZE, start) - start;
+            metrics.linesNormalized = oldSnapshot.size() + newSnapshot.size();
 
-            int oldGapStart = curr[0] + 1;
-            int oldGapEnd = next[0] - 1;
-            int newGapStart = curr[1] + 1;
-            int newGapEnd = next[1] - 1;
+            // Steps 1-6
+            LineMapping mapping = engine.diff(oldSnapshot, newSnapshot, metrics);
 
-            int oldGapSize = Math.max(0, oldGapEnd - oldGapStart + 1);
-            int newGapSize = Math.max(0, newGapEnd - newGapStart + 1);
+            // --- FINAL OUTPUT GENERATION (text format: "1 -> 1") ---
+            writer.write(mapping, System.out);
+            if (stats) System.err.println(metrics.toJson());
 
-            if (oldGapSize > 0 && oldGapSize == newGapSize) {
-                for (int k = 0; k < oldGapSize; k++) {
-                    mapping.putIfAbsent(oldGapStart + k, String.valueOf(newGapStart + k));
-                }
-            }
-        }
-    }
-
-    // --- Helpers (Same as before) ---
-    private static List<LinesMapping.SettingLineRecord> readAndGetRecords(Path p, List<String> rawList) throws Exception {
-        JavaLineNormalizer.StatefulNormalizer norm = new JavaLineNormalizer.StatefulNormalizer();
-        List<LinesMapping.SettingLineRecord> recs = new ArrayList<>();
-        List<String> lines = java.nio.file.Files.readAllLines(p);
-        for (int i = 0; i < lines.size(); i++) {
-            String n = norm.normalizeLine(lines.get(i));
-            rawList.add(n);
-            recs.add(new LinesMapping.SettingLineRecord(i + 1, n));
-        }
-        return recs;
-    }
-
-    private static List<MappingResolver.SettingLineRecord> convertToResolverRecords(List<LinesMapping.SettingLineRecord> src) {
-        List<MappingResolver.SettingLineRecord> out = new ArrayList<>();
-        for (LinesMapping.SettingLineRecord s : src) {
-            out.add(new MappingResolver.SettingLineRecord(s.originalLineNumber - 1, s.normalized, ""));
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        return out;
     }
 
-    private static Map<Integer, List<MappingResolver.Candidate>> convertToResolverCandidates(Map<Integer, List<SimhashGenerator.LineSimhash.Candidate>> src) {
-        Map<Integer, List<MappingResolver.Candidate>> out = new HashMap<>();
-        for (Map.Entry<Integer, List<SimhashGenerator.LineSimhash.Candidate>> e : src.entrySet()) {
-            List<MappingResolver.Candidate> list = new ArrayList<>();
-            for (SimhashGenerator.LineSimhash.Candidate c : e.getValue()) {
-                list.add(new MappingResolver.Candidate(c.newIndex, c.hammingDistance));
+    // One "=== path (status) ===" header per file pair and its mapping (one BinaryMappingWriter
+    // frame per pair in the binary format), the throughput summary on stderr, and with --stats
+    // the metrics of all pairs added up
+    private static void printFiles(TreeDiff.Result result, MappingWriter writer, boolean stats) throws IOException {
+        DiffMetrics total = new DiffMetrics();
+        DataOutputStream frames = writer instanceof BinaryMappingWriter
+                ? new DataOutputStream(new BufferedOutputStream(System.out, 1 << 16)) : null;
+        for (TreeDiff.FileResult file : result.files) {
+            String status = file.status.name().toLowerCase() + (file.error != null ? ": " + file.error : "");
+            if (frames != null) {
+                ((BinaryMappingWriter) writer).writeFrame(file.path, status, file.mapping, frames);
+            } else {
+                System.out.println("=== " + file.path + " (" + status + ") ===");
+                if (file.mapping != null) writer.write(file.mapping, System.out);
             }
-            out.put(e.getKey(), list);
+            if (file.mapping != null) total.add(file.mapping.metrics);
         }
-        return out;
+        if (frames != null) frames.flush();
+        System.err.println(result.summary());
+        if (stats) System.err.println(total.toJson());
     }
-}
\ No newline at end of file
+}
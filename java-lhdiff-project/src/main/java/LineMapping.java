@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Final old-to-new line mapping of one diff, with 0-based line indices.
+ *
+ * Old line {@code i} maps to the new lines {@code newStart[i]..newEnd[i]} (inclusive):
+ * a single line when both are equal, a Step 5 split when the run is longer, and nothing
+ * when both are -1. Blank lines are kept in the arrays but are not reported by the
+ * writers (see MappingWriter).
+ */
+public final class LineMapping {
+    public final int[] newStart;
+    public final int[] newEnd;
+    public final int newSize;
+    public final BitSet oldBlank;
+    public final BitSet newBlank;
+    public final DiffMetrics metrics; // how the mapping was computed; all zero when it was not
+
+    public LineMapping(int[] newStart, int[] newEnd, int newSize, BitSet oldBlank, BitSet newBlank) {
+        this(newStart, newEnd, newSize, oldBlank, newBlank, new DiffMetrics());
+    }
+
+    public LineMapping(int[] newStart, int[] newEnd, int newSize, BitSet oldBlank, BitSet newBlank,
+                       DiffMetrics metrics) {
+        this.newStart = newStart;
+        this.newEnd = newEnd;
+        this.newSize = newSize;
+        this.oldBlank = oldBlank;
+        this.newBlank = newBlank;
+        this.metrics = metrics;
+    }
+
+    public int oldSize() {
+        return newStart.length;
+    }
+
+    public boolean isMapped(int oldIdx) {
+        return newStart[oldIdx] >= 0;
+    }
+
+    public boolean isSplit(int oldIdx) {
+        return newEnd[oldIdx] > newStart[oldIdx];
+    }
+
+    /** New lines that some old line maps to, including every line of a split. */
+    public BitSet mappedNew() {
+        BitSet mapped = new BitSet(newSize);
+        for (int i = 0; i < newStart.length; i++) {
+            if (newStart[i] >= 0) mapped.set(newStart[i], newEnd[i] + 1);
+        }
+        return mapped;
+    }
+
+    /**
+     * Combines the Step 2 anchors, Step 4 matches and Step 5 splits, then runs Step 6:
+     * between two consecutive single-line mappings, a gap with as many old as new lines
+     * is zipped up line by line wherever an old line is still unmapped.
+     */
+    public static LineMapping assemble(LineSnapshot oldSnapshot, LineSnapshot newSnapshot, Step2Result step2,
+                                       int[] step4Matches, Step5LineSplitDetector.Splits splits) {
+        return assemble(oldSnapshot, newSnapshot, step2, step4Matches, splits, new DiffMetrics());
+    }
+
+    /** Same, counting the zipper's fills into {@code metrics}, which the mapping then carries. */
+    public static LineMapping assemble(LineSnapshot oldSnapshot, LineSnapshot newSnapshot, Step2Result step2,
+                                       int[] step4Matches, Step5LineSplitDetector.Splits splits,
+                                       DiffMetrics metrics) {
+        int oldSize = oldSnapshot.size();
+        int newSize = newSnapshot.size();
+        int[] start = new int[oldSize];
+        int[] end = new int[oldSize];
+        Arrays.fill(start, -1);
+        Arrays.fill(end, -1);
+        for (int k = 0; k < step2.anchorCount(); k++) {
+            start[step2.anchorOld[k]] = end[step2.anchorOld[k]] = step2.anchorNew[k];
+        }
+        for (int i = 0; i < oldSize; i++) {
+            if (step4Matches[i] >= 0) start[i] = end[i] = step4Matches[i];
+            if (splits.isSplit(i)) {
+                start[i] = splits.start[i];
+                end[i] = splits.end[i];
+            }
+        }
+        metrics.zipperFills += runZipperPass(start, end, newSize);
+        return new LineMapping(start, end, newSize, blankLines(oldSnapshot.rawLines), blankLines(newSnapshot.rawLines),
+                metrics);
+    }
+
+    /** Every line of a file to the same line of an identical copy, as the full pipeline maps it. */
+    public static LineMapping identity(List<String> rawLines) {
+        int[] start = new int[rawLines.size()];
+        for (int i = 0; i < start.length; i++) start[i] = i;
+        BitSet blank = blankLines(rawLines);
+        return new LineMapping(start, start.clone(), start.length, blank, (BitSet) blank.clone());
+    }
+
+    // Returns the number of lines it mapped
+    private static int runZipperPass(int[] start, int[] end, int newSize) {
+        // Single-line mappings in old-line order, fixed before any gap is filled
+        int count = 0;
+        int[] anchors = new int[start.length];
+        for (int i = 0; i < start.length; i++) {
+            if (start[i] >= 0 && start[i] == end[i]) anchors[count++] = i;
+        }
+
+        int fills = 0;
+        int prevOld = -1;
+        int prevNew = -1;
+        for (int a = 0; a <= count; a++) {
+            int nextOld = a < count ? anchors[a] : start.length;
+            int nextNew = a < count ? start[anchors[a]] : newSize;
+            int gap = nextOld - prevOld - 1;
+            if (gap > 0 && gap == nextNew - prevNew - 1) {
+                for (int k = 0; k < gap; k++) {
+                    int i = prevOld + 1 + k;
+                    if (start[i] < 0) {
+                        start[i] = end[i] = prevNew + 1 + k;
+                        fills++;
+                    }
+                }
+            }
+            prevOld = nextOld;
+            prevNew = nextNew;
+        }
+        return fills;
+    }
+
+    private static BitSet blankLines(List<String> rawLines) {
+        BitSet blank = new BitSet(rawLines.size());
+        for (int i = 0; i < rawLines.size(); i++) {
+            if (rawLines.get(i).trim().isEmpty()) blank.set(i);
+        }
+        return blank;
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable per-file snapshot shared by every pipeline stage.
+ *
+ * The file is read and decoded exactly once (memory-mapped when it is large),
+ * split into raw lines, and normalized once (see JavaLineNormalizer.normalizeAll).
+ * LinesMapping, SimhashGenerator, MappingResolver and Step5LineSplitDetector
+ * all work from the same lists instead of re-reading the file.
+ */
+public final class LineSnapshot {
+    // Files at least this large are memory-mapped instead of copied into a heap array.
+    private static final long MAP_THRESHOLD = 1L << 20;
+
+    public final Path path; // null when the snapshot was built from in-memory content
+    public final List<String> rawLines;
+    public final List<String> normalizedLines;
+
+    // SimHashes for the most recently requested window size; derived data, computed on demand.
+    private volatile SimhashMemo simhashes;
+
+    private LineSnapshot(Path path, List<String> rawLines, List<String> normalized) {
+        this.path = path;
+        this.rawLines = Collections.unmodifiableList(rawLines);
+        this.normalizedLines = Collections.unmodifiableList(normalized);
+    }
+
+    private LineSnapshot(Path path, List<String> rawLines) {
+        this(path, rawLines, JavaLineNormalizer.normalizeAll(rawLines));
+    }
+
+    /** Reads, decodes (UTF-8) and normalizes {@code file} in a single pass over its bytes. */
+    public static LineSnapshot load(Path file) throws IOException {
+        return new LineSnapshot(file, decodeLines(readBytes(file)));
+    }
+
+    /** Builds a snapshot from raw lines that are already in memory. */
+    public static LineSnapshot fromLines(List<String> rawLines) {
+        return new LineSnapshot(null, new ArrayList<>(rawLines));
+    }
+
+    /** Builds a snapshot from file content that is already in memory. */
+    public static LineSnapshot fromText(String content) {
+        return new LineSnapshot(null, splitLines(CharBuffer.wrap(content.toCharArray())));
+    }
+
+    static LineSnapshot create(Path path, List<String> rawLines) {
+        return new LineSnapshot(path, rawLines);
+    }
+
+    // Rebuilds a snapshot whose normalized lines and SimHashes came from SnapshotCache.
+    static LineSnapshot restore(Path path, List<String> rawLines, List<String> normalized,
+                                int windowSize, SimhashGenerator.LineSimhash[] hashes) {
+        LineSnapshot snapshot = new LineSnapshot(path, rawLines, normalized);
+        snapshot.simhashes = new SimhashMemo(windowSize, hashes);
+        return snapshot;
+    }
+
+    /**
+     * Content and context SimHashes of every normalized line for the given context window.
+     * Computed on first use and kept with the snapshot; the returned array must not be modified.
+     */
+    public SimhashGenerator.LineSimhash[] lineSimhashes(int windowSize) {
+        SimhashMemo memo = simhashes;
+        if (memo == null || memo.windowSize != windowSize) {
+            SimhashGenerator.LineSimhash builder = new SimhashGenerator.LineSimhash(0, 0L, 0L);
+            memo = new SimhashMemo(windowSize, builder.buildLineSimhashes(normalizedLines, windowSize));
+            simhashes = memo;
+        }
+        return memo.hashes;
+    }
+
+    /**
+     * Lines [from, to) as a snapshot of their own, without reading or normalizing again.
+     * The slice's SimHashes for {@code windowSize} are copied from this snapshot, so every
+     * line keeps its whole-file values, even at the slice edges. Anything the slice
+     * computes itself from its lines, such as context vectors, only sees [from, to).
+     */
+    public LineSnapshot slice(int from, int to, int windowSize) {
+        SimhashGenerator.LineSimhash[] hashes = lineSimhashes(windowSize);
+        return restore(null, rawLines.subList(from, to), normalizedLines.subList(from, to),
+                windowSize, Arrays.copyOfRange(hashes, from, to));
+    }
+
+    public int size() {
+        return rawLines.size();
+    }
+
+    // Whole file as bytes; memory-mapped when large.
+    static ByteBuffer readBytes(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(file));
+    }
+
+    // Strict decoding, so malformed input fails the same way Files.readAllLines does.
+    static List<String> decodeLines(ByteBuffer bytes) throws IOException {
+        return splitLines(StandardCharsets.UTF_8.newDecoder().decode(bytes.duplicate()));
+    }
+
+    // Same line terminators as BufferedReader.readLine: "\n", "\r" or "\r\n".
+    private static List<String> splitLines(CharBuffer chars) {
+        char[] buf = chars.array();
+        int offset = chars.arrayOffset() + chars.position();
+        int end = offset + chars.remaining();
+        List<String> lines = new ArrayList<>();
+        int start = offset;
+        int i = offset;
+        while (i < end) {
+            char c = buf[i];
+            if (c == '\n' || c == '\r') {
+                lines.add(new String(buf, start, i - start));
+                if (c == '\r' && i + 1 < end && buf[i + 1] == '\n') i++;
+                start = i + 1;
+            }
+            i++;
+        }
+        if (start < end) lines.add(new String(buf, start, end - start));
+        return lines;
+    }
+
+    private static final class SimhashMemo {
+        final int windowSize;
+        final SimhashGenerator.LineSimhash[] hashes;
+
+        SimhashMemo(int windowSize, SimhashGenerator.LineSimhash[] hashes) {
+            this.windowSize = windowSize;
+            this.hashes = hashes;
+        }
+    }
+}
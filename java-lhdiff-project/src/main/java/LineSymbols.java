@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-diff symbol table that interns every distinct normalized line of the old
+ * and new file into a small int id. Later stages compare ids instead of strings:
+ * two lines are equal exactly when their ids are equal, and blank lines
+ * ("BLANK_TOKEN") always get {@link #BLANK}.
+ */
+public final class LineSymbols {
+    public static final int BLANK = 0;
+    private static final String BLANK_TOKEN = "BLANK_TOKEN";
+
+    public final int[] oldIds;
+    public final int[] newIds;
+
+    // Open-addressing table from normalized text to id; ids are dense from 0.
+    private String[] keys;
+    private int[] values;
+    private int count;
+
+    public LineSymbols(List<String> oldNormalized, List<String> newNormalized) {
+        int capacity = Integer.highestOneBit(Math.max(16, (oldNormalized.size() + newNormalized.size()) * 2)) << 1;
+        keys = new String[capacity];
+        values = new int[capacity];
+        intern(BLANK_TOKEN);
+        oldIds = internAll(oldNormalized);
+        newIds = internAll(newNormalized);
+        // The table is only needed while the id arrays are built.
+        keys = null;
+        values = null;
+    }
+
+    private LineSymbols(int[] oldIds, int[] newIds, int count) {
+        this.oldIds = oldIds;
+        this.newIds = newIds;
+        this.count = count;
+    }
+
+    /** The ids of old lines [oldFrom, oldTo) and new lines [newFrom, newTo), re-indexed from 0. */
+    public LineSymbols slice(int oldFrom, int oldTo, int newFrom, int newTo) {
+        return new LineSymbols(Arrays.copyOfRange(oldIds, oldFrom, oldTo), Arrays.copyOfRange(newIds, newFrom, newTo), count);
+    }
+
+    /** Number of distinct normalized lines across both files, including the blank symbol. */
+    public int symbolCount() {
+        return count;
+    }
+
+    private int[] internAll(List<String> lines) {
+        int[] ids = new int[lines.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = intern(lines.get(i));
+        return ids;
+    }
+
+    private int intern(String s) {
+        if ((count + 1) * 2 > keys.length) grow();
+        int mask = keys.length - 1;
+        int slot = mix(s.hashCode()) & mask;
+        while (true) {
+            String k = keys[slot];
+            if (k == null) {
+                keys[slot] = s;
+                values[slot] = count;
+                return count++;
+            }
+            if (k.equals(s)) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int s = 0; s < oldKeys.length; s++) {
+            if (oldKeys[s] == null) continue;
+            int slot = mix(oldKeys[s].hashCode()) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[s];
+            values[slot] = oldValues[s];
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
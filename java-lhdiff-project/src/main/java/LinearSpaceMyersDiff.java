@@ -0,0 +1,112 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Linear-space divide-and-conquer Myers diff over interned line ids.
+ *
+ * Each region is trimmed of its common prefix and suffix, then split at the middle
+ * snake found by running the forward and reverse O(ND) searches towards each other.
+ * The two halves are processed from an explicit work stack, so memory stays O(N + M)
+ * (two diagonal arrays shared by every step) and deep splits cannot overflow the call stack.
+ */
+public final class LinearSpaceMyersDiff implements AnchorDiff {
+
+    @Override
+    public int[] match(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+        int maxD = (a.length + b.length + 1) / 2 + 1;
+        int[] forward = new int[2 * maxD + 2];
+        int[] reverse = new int[2 * maxD + 2];
+
+        Deque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] { 0, a.length, 0, b.length });
+        while (!work.isEmpty()) {
+            int[] region = work.pop();
+            int aLo = region[0], aHi = region[1], bLo = region[2], bHi = region[3];
+
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) match[aLo++] = bLo++;
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) match[--aHi] = --bHi;
+            if (aLo == aHi || bLo == bHi) continue;
+
+            long split = middleSnake(a, aLo, aHi, b, bLo, bHi, forward, reverse);
+            if (split < 0) continue; // nothing in common
+            int x = aLo + (int) (split >>> 32);
+            int y = bLo + (int) split;
+            if ((x == aLo && y == bLo) || (x == aHi && y == bHi)) continue; // no progress possible
+            work.push(new int[] { x, aHi, y, bHi });
+            work.push(new int[] { aLo, x, bLo, y });
+        }
+        return match;
+    }
+
+    /**
+     * Finds a point on an optimal edit path through the region where the forward and
+     * reverse searches overlap. Returns it as (x << 32 | y) relative to the region
+     * start, or -1 when the region has no common element.
+     */
+    private static long middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                    int[] v1, int[] v2) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD;
+        Arrays.fill(v1, 0, length + 2, -1);
+        Arrays.fill(v2, 0, length + 2, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1Offset = offset + k1;
+                int x1 = (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1]))
+                        ? v1[k1Offset + 1] : v1[k1Offset - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2Offset = offset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < length && v2[k2Offset] != -1) {
+                        if (x1 >= n - v2[k2Offset]) return ((long) x1 << 32) | y1;
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2Offset = offset + k2;
+                int x2 = (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1]))
+                        ? v2[k2Offset + 1] : v2[k2Offset - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aHi - 1 - x2] == b[bHi - 1 - y2]) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1Offset = offset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < length && v1[k1Offset] != -1) {
+                        int x1 = v1[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if (x1 >= n - x2) return ((long) x1 << 32) | y1;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -1,83 +1,50 @@
-import com.github.difflib.DiffUtils;
-import com.github.difflib.patch.AbstractDelta;
-import com.github.difflib.patch.Chunk;
-import com.github.difflib.patch.Patch;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 public class LinesMapping {
-    public static class SettingLineRecord {
-        public final int originalLineNumber;
-        public final String normalized;
-        public SettingLineRecord(int originalLineNumber, String normalized) {
-            this.originalLineNumber = originalLineNumber;
-            this.normalized = normalized;
-        }
+    private final AnchorDiff anchorDiff;
+
+    public LinesMapping() {
+        this(new IntMyersDiff());
     }
 
-    private List<SettingLineRecord> readAndNormalize(Path file, List<String> outNormalizedStrings) throws Exception {
-        JavaLineNormalizer.StatefulNormalizer normalizer = new JavaLineNormalizer.StatefulNormalizer();
-        List<SettingLineRecord> records = new ArrayList<>();
-        List<String> lines = Files.readAllLines(file);
-        for (int i = 0; i < lines.size(); i++) {
-            String r = normalizer.normalizeLine(lines.get(i));
-            outNormalizedStrings.add(r);
-            records.add(new SettingLineRecord(i + 1, r));
-        }
-        return records;
+    public LinesMapping(AnchorDiff anchorDiff) {
+        this.anchorDiff = anchorDiff;
     }
 
     public Step2Result run(Path oldFile, Path newFile) throws Exception {
-        List<String> oldNormStrings = new ArrayList<>();
-        List<String> newNormStrings = new ArrayList<>();
-        List<SettingLineRecord> oldLines = readAndNormalize(oldFile, oldNormStrings);
-        List<SettingLineRecord> newLines = readAndNormalize(newFile, newNormStrings);
-
-        Step2Result result = new Step2Result(oldLines.size(), newLines.size());
-        Patch<String> patch = DiffUtils.diff(oldNormStrings, newNormStrings);
-
-        int oldIndex = 0;
-        int newIndex = 0;
+        return run(LineSnapshot.load(oldFile), LineSnapshot.load(newFile));
+    }
 
-        for (AbstractDelta<String> delta : patch.getDeltas()) {
-            Chunk<String> src = delta.getSource();
-            Chunk<String> tgt = delta.getTarget();
-            int unchangedCount = src.getPosition() - oldIndex;
+    public Step2Result run(LineSnapshot oldSnapshot, LineSnapshot newSnapshot) {
+        LineSymbols symbols = new LineSymbols(oldSnapshot.normalizedLines, newSnapshot.normalizedLines);
+        int[] oldIds = symbols.oldIds;
+        int[] newIds = symbols.newIds;
 
-            for (int k = 0; k < unchangedCount; k++) {
-                String text = oldLines.get(oldIndex + k).normalized;
-                // FIX: Do not use BLANK_TOKEN as an anchor
-                if (text.equals(newLines.get(newIndex + k).normalized) && !text.equals("BLANK_TOKEN")) {
-                    result.anchors.add(new int[] { oldIndex + k, newIndex + k });
-                }
-            }
-            oldIndex = src.getPosition() + src.size();
-            newIndex = tgt.getPosition() + tgt.size();
-        }
+        Step2Result result = new Step2Result(oldIds.length, newIds.length);
+        result.symbols = symbols;
 
-        int tail = Math.min(oldLines.size() - oldIndex, newLines.size() - newIndex);
-        for (int k = 0; k < tail; k++) {
-            String text = oldLines.get(oldIndex + k).normalized;
+        int[] match = anchorDiff.match(oldIds, newIds);
+        int count = 0;
+        for (int i = 0; i < match.length; i++) {
             // FIX: Do not use BLANK_TOKEN as an anchor
-            if (text.equals(newLines.get(newIndex + k).normalized) && !text.equals("BLANK_TOKEN")) {
-                result.anchors.add(new int[] { oldIndex + k, newIndex + k });
-            }
+            if (match[i] >= 0 && oldIds[i] == LineSymbols.BLANK) match[i] = -1;
+            if (match[i] >= 0) count++;
         }
 
-        Set<Integer> mappedOld = new HashSet<>();
-        Set<Integer> mappedNew = new HashSet<>();
-        for (int[] pair : result.anchors) {
-            mappedOld.add(pair[0]);
-            mappedNew.add(pair[1]);
+        result.anchorOld = new int[count];
+        result.anchorNew = new int[count];
+        result.unmappedOld.set(0, oldIds.length);
+        result.unmappedNew.set(0, newIds.length);
+        int k = 0;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] < 0) continue;
+            result.anchorOld[k] = i;
+            result.anchorNew[k] = match[i];
+            result.unmappedOld.clear(i);
+            result.unmappedNew.clear(match[i]);
+            k++;
         }
-        for (int i = 0; i < oldLines.size(); i++) if (!mappedOld.contains(i)) result.unmappedOld.add(i);
-        for (int j = 0; j < newLines.size(); j++) if (!mappedNew.contains(j)) result.unmappedNew.add(j);
-        
+
         return result;
     }
-}
\ No newline at end of file
+}
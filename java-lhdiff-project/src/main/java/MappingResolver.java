@@ -1,97 +1,279 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class MappingResolver {
-    private static final int CONTEXT_WINDOW_SIZE = 4;
+    static final int CONTEXT_WINDOW_SIZE = 4;
     // ADJUSTED: Higher Content weight to preserve Exact Matches with bad context (Line 1).
     // ADJUSTED: Threshold to 0.65 to filter out "Sum" vs "Product" (Line 6).
-    private static final double WEIGHT_CONTENT = 0.8;
-    private static final double WEIGHT_CONTEXT = 0.2;
-    private static final double SIMILARITY_THRESHOLD = 0.65; 
-    
-    private final SimhashGenerator contextExtractor = new SimhashGenerator();
-
-    public static class SettingLineRecord {
-        public int lineIndex;
-        public String normalized;
-        public String simhash;
-        public SettingLineRecord(int lineIndex, String normalized, String simhash) {
-            this.lineIndex = lineIndex;
-            this.normalized = normalized;
-            this.simhash = simhash;
-        }
+    public static final double WEIGHT_CONTENT = 0.8;
+    public static final double WEIGHT_CONTEXT = 0.2;
+    public static final double SIMILARITY_THRESHOLD = 0.65; 
+    // Old lines scored per fork-join task
+    private static final int SCORE_CHUNK = 64;
+    // Slack on the content bound, so float rounding never prunes a pair that scores exactly the threshold
+    private static final double PRUNE_EPSILON = 1e-9;
+
+    /** How scored candidate pairs are turned into matches. */
+    public enum Assignment {
+        /**
+         * Old lines in ascending order each take their best-scoring candidate that is
+         * still free (the first one on equal scores). This is the original behaviour.
+         */
+        OLD_ORDER,
+        /**
+         * All pairs at once, highest score first; equal scores go to the lower old line,
+         * then the lower new line. A line is matched at most once.
+         */
+        BEST_FIRST
+    }
+
+    private final Assignment assignment;
+    private final ForkJoinPool pool;
+    private final double weightContent;
+    private final double weightContext;
+    private final double threshold;
+
+    public MappingResolver() {
+        this(Assignment.OLD_ORDER, null);
     }
 
-    public static class Candidate {
-        public int newIndex;
-        public int distance;
-        public Candidate(int newIndex, int distance) {
-            this.newIndex = newIndex;
-            this.distance = distance;
+    /** @param pool pool that scores candidate pairs; null for the common pool */
+    public MappingResolver(Assignment assignment, ForkJoinPool pool) {
+        this(assignment, pool, WEIGHT_CONTENT, WEIGHT_CONTEXT, SIMILARITY_THRESHOLD);
+    }
+
+    /**
+     * Scores pairs as {@code weightContent * content + weightContext * context}; pairs
+     * below {@code threshold} are never matched. {@code weightContent} must be positive:
+     * the pruning bound divides by it.
+     */
+    public MappingResolver(Assignment assignment, ForkJoinPool pool,
+                           double weightContent, double weightContext, double threshold) {
+        if (!(weightContent > 0) || !(weightContext >= 0)) {
+            throw new IllegalArgumentException("invalid weights: " + weightContent + ", " + weightContext);
         }
+        this.assignment = assignment;
+        this.pool = pool;
+        this.weightContent = weightContent;
+        this.weightContext = weightContext;
+        this.threshold = threshold;
     }
 
-    public Map<Integer, Integer> resolveCandidates(
-            List<SettingLineRecord> oldRecords,
-            List<SettingLineRecord> newRecords,
-            List<String> oldRawLines,
-            List<String> newRawLines,
-            Map<Integer, List<Candidate>> candidateMap,
-            Set<Integer> unmappedOld,
-            Set<Integer> unmappedNew) {
-        
-        Map<Integer, Integer> step4Matches = new HashMap<>();
+    /**
+     * Matches unmapped old lines to their Step 3 candidates in two phases. First every
+     * (old line, candidate) pair is scored, in parallel; pairs below the threshold are
+     * dropped. Then the matches are chosen from the scores by the configured
+     * {@link Assignment}, sequentially, so the result does not depend on the number of
+     * threads. Matched lines are cleared from both unmapped sets.
+     *
+     * @return for each old line the new line it was matched to here, or -1
+     */
+    public int[] resolveCandidates(
+            LineSnapshot oldSnapshot,
+            LineSnapshot newSnapshot,
+            LineSymbols symbols,
+            CandidateTable candidates,
+            BitSet unmappedOld,
+            BitSet unmappedNew) {
+        return resolveCandidates(oldSnapshot, newSnapshot, symbols, candidates, unmappedOld, unmappedNew, null);
+    }
+
+    /** Same, also counting context vectors and Levenshtein work into {@code metrics} unless it is null. */
+    public int[] resolveCandidates(
+            LineSnapshot oldSnapshot,
+            LineSnapshot newSnapshot,
+            LineSymbols symbols,
+            CandidateTable candidates,
+            BitSet unmappedOld,
+            BitSet unmappedNew,
+            DiffMetrics metrics) {
         
-        for (int oldIdx : candidateMap.keySet()) {
-            if (!unmappedOld.contains(oldIdx)) continue; 
+        int[] step4Matches = new int[oldSnapshot.size()];
+        Arrays.fill(step4Matches, -1);
+        // Every line's context vector is built once instead of once per candidate pair
+        ContextVectors.Tokens tokens = new ContextVectors.Tokens();
+        ContextVectors oldContexts = ContextVectors.build(oldSnapshot.rawLines, CONTEXT_WINDOW_SIZE, tokens);
+        ContextVectors newContexts = ContextVectors.build(newSnapshot.rawLines, CONTEXT_WINDOW_SIZE, tokens);
+        if (metrics != null) metrics.contextVectors += oldSnapshot.size() + newSnapshot.size();
 
-            String oldLineNorm = oldRecords.get(oldIdx).normalized;
+        // Phase 1: score[c] for every candidate entry c, NEGATIVE_INFINITY when it cannot match
+        int[] oldLines = new int[unmappedOld.cardinality()];
+        int count = 0;
+        for (int oldIdx = unmappedOld.nextSetBit(0); oldIdx >= 0 && oldIdx < candidates.oldSize();
+                oldIdx = unmappedOld.nextSetBit(oldIdx + 1)) {
             // Skip fuzzy matching for BLANK_TOKEN
-            if (oldLineNorm.equals("BLANK_TOKEN")) continue;
+            if (symbols.oldIds[oldIdx] != LineSymbols.BLANK) oldLines[count++] = oldIdx;
+        }
+        double[] score = new double[candidates.size()];
+        Arrays.fill(score, Double.NEGATIVE_INFINITY);
+        ScoreTask task = new ScoreTask(oldLines, 0, count, oldSnapshot.normalizedLines, newSnapshot.normalizedLines,
+                symbols, candidates, unmappedNew, oldContexts, newContexts, weightContent, weightContext, threshold, score,
+                metrics);
+        if (count <= SCORE_CHUNK) {
+            task.compute();
+        } else {
+            (pool != null ? pool : ForkJoinPool.commonPool()).invoke(task);
+        }
+
+        // Phase 2: assignment
+        if (assignment == Assignment.BEST_FIRST) {
+            assignBestFirst(oldLines, count, candidates, score, threshold, step4Matches, unmappedOld, unmappedNew);
+        } else {
+            assignInOldOrder(oldLines, count, candidates, score, threshold, step4Matches, unmappedOld, unmappedNew);
+        }
+        return step4Matches;
+    }
 
-            String oldLineContext = contextExtractor.extractContext(oldRawLines, oldIdx, CONTEXT_WINDOW_SIZE); 
-            
-            List<Candidate> candidates = candidateMap.get(oldIdx);
+    private static void assignInOldOrder(int[] oldLines, int count, CandidateTable candidates, double[] score,
+                                         double threshold, int[] step4Matches, BitSet unmappedOld, BitSet unmappedNew) {
+        for (int k = 0; k < count; k++) {
+            int oldIdx = oldLines[k];
             double bestScore = -1.0;
             int bestMatchIndex = -1;
-            
-            for (Candidate candidate : candidates) {
-                int newIdx = candidate.newIndex;
-                if (!unmappedNew.contains(newIdx)) continue; 
-                
-                String newLineNorm = newRecords.get(newIdx).normalized;
-                if (newLineNorm.equals("BLANK_TOKEN")) continue;
-
-                String newLineContext = contextExtractor.extractContext(newRawLines, newIdx, CONTEXT_WINDOW_SIZE);
-
-                double contentSim = SimilarityMetrics.getContentSimilarity(oldLineNorm, newLineNorm);
-                double contextSim = SimilarityMetrics.getContextSimilarity(newLineContext, oldLineContext); 
-                
-                double combinedScore = (WEIGHT_CONTENT * contentSim) + (WEIGHT_CONTEXT * contextSim);
-                
-                if (combinedScore > bestScore) {
-                    bestScore = combinedScore;
+            for (int c = candidates.start(oldIdx); c < candidates.end(oldIdx); c++) {
+                int newIdx = candidates.newIndex[c];
+                if (!unmappedNew.get(newIdx)) continue; 
+                if (score[c] > bestScore) {
+                    bestScore = score[c];
                     bestMatchIndex = newIdx;
                 }
             }
-            
-            if (bestScore >= SIMILARITY_THRESHOLD && bestMatchIndex != -1) {
-                step4Matches.put(oldIdx, bestMatchIndex);
-                unmappedOld.remove(oldIdx);
-                unmappedNew.remove(bestMatchIndex);
+            if (bestScore >= threshold && bestMatchIndex != -1) {
+                step4Matches[oldIdx] = bestMatchIndex;
+                unmappedOld.clear(oldIdx);
+                unmappedNew.clear(bestMatchIndex);
             }
         }
-        return step4Matches;
     }
 
-    private class SimhashGenerator {
-        public String extractContext(List<String> rawLines, int index, int windowSize) {
-            StringBuilder context = new StringBuilder();
-            int start = Math.max(0, index - windowSize);
-            int end = Math.min(rawLines.size(), index + windowSize + 1);
-            for (int i = start; i < end; i++) {
-                if (i != index) context.append(rawLines.get(i)).append(" ");
+    private static void assignBestFirst(int[] oldLines, int count, CandidateTable candidates, double[] score,
+                                        double threshold, int[] step4Matches, BitSet unmappedOld, BitSet unmappedNew) {
+        int edges = 0;
+        int[] edge = new int[candidates.size()];
+        int[] oldOf = new int[candidates.size()];
+        for (int k = 0; k < count; k++) {
+            int oldIdx = oldLines[k];
+            for (int c = candidates.start(oldIdx); c < candidates.end(oldIdx); c++) {
+                oldOf[c] = oldIdx;
+                if (score[c] >= threshold) edge[edges++] = c;
             }
-            return context.toString().trim();
+        }
+        sortEdges(edge, edges, score, oldOf, candidates.newIndex);
+        for (int e = 0; e < edges; e++) {
+            int c = edge[e];
+            int oldIdx = oldOf[c];
+            int newIdx = candidates.newIndex[c];
+            if (step4Matches[oldIdx] >= 0 || !unmappedNew.get(newIdx)) continue;
+            step4Matches[oldIdx] = newIdx;
+            unmappedOld.clear(oldIdx);
+            unmappedNew.clear(newIdx);
+        }
+    }
+
+    // Bottom-up merge sort of edge[0, n): descending score, then ascending old and new line
+    private static void sortEdges(int[] edge, int n, double[] score, int[] oldOf, int[] newOf) {
+        int[] src = edge;
+        int[] dst = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    int a = src[i], b = src[j];
+                    boolean takeB = score[b] > score[a]
+                            || (score[b] == score[a] && (oldOf[b] < oldOf[a] || (oldOf[b] == oldOf[a] && newOf[b] < newOf[a])));
+                    dst[k++] = takeB ? src[j++] : src[i++];
+                }
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        if (src != edge) System.arraycopy(src, 0, edge, 0, n);
+    }
+
+    // Scores the candidates of oldLines[from, to); each task writes only its own entries
+    private static final class ScoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] oldLines;
+        private final int from;
+        private final int to;
+        private final List<String> oldNormalized;
+        private final List<String> newNormalized;
+        private final LineSymbols symbols;
+        private final CandidateTable candidates;
+        private final BitSet unmappedNew;
+        private final ContextVectors oldContexts;
+        private final ContextVectors newContexts;
+        private final double weightContent;
+        private final double weightContext;
+        private final double threshold;
+        private final double[] score;
+        private final DiffMetrics metrics;
+
+        ScoreTask(int[] oldLines, int from, int to, List<String> oldNormalized, List<String> newNormalized,
+                  LineSymbols symbols, CandidateTable candidates, BitSet unmappedNew,
+                  ContextVectors oldContexts, ContextVectors newContexts,
+                  double weightContent, double weightContext, double threshold, double[] score,
+                  DiffMetrics metrics) {
+            this.oldLines = oldLines;
+            this.from = from;
+            this.to = to;
+            this.oldNormalized = oldNormalized;
+            this.newNormalized = newNormalized;
+            this.symbols = symbols;
+            this.candidates = candidates;
+            this.unmappedNew = unmappedNew;
+            this.oldContexts = oldContexts;
+            this.newContexts = newContexts;
+            this.weightContent = weightContent;
+            this.weightContext = weightContext;
+            this.threshold = threshold;
+            this.score = score;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SCORE_CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(split(from, mid), split(mid, to));
+                return;
+            }
+            // A leaf runs on one thread, so the thread's DP cell count tells what it did
+            long cellsBefore = metrics != null ? SimilarityMetrics.dpCells() : 0;
+            long calls = 0;
+            for (int k = from; k < to; k++) {
+                int oldIdx = oldLines[k];
+                String oldLineNorm = oldNormalized.get(oldIdx);
+                for (int c = candidates.start(oldIdx); c < candidates.end(oldIdx); c++) {
+                    int newIdx = candidates.newIndex[c];
+                    // unmappedNew is only read here; the assignment phase changes it later
+                    if (!unmappedNew.get(newIdx)) continue; 
+                    if (symbols.newIds[newIdx] == LineSymbols.BLANK) continue;
+                    String newLineNorm = newNormalized.get(newIdx);
+
+                    double contextSim = ContextVectors.cosine(newContexts, newIdx, oldContexts, oldIdx);
+                    // Pairs below the threshold are never matched, so the content
+                    // distance can stop once the threshold is out of reach
+                    double needed = (threshold - weightContext * contextSim) / weightContent - PRUNE_EPSILON;
+                    double contentSim = SimilarityMetrics.getContentSimilarity(oldLineNorm, newLineNorm, needed);
+                    calls++;
+                
+                    score[c] = (weightContent * contentSim) + (weightContext * contextSim);
+                }
+            }
+            if (metrics != null) metrics.addLevenshtein(calls, SimilarityMetrics.dpCells() - cellsBefore);
+        }
+
+        private ScoreTask split(int lo, int hi) {
+            return new ScoreTask(oldLines, lo, hi, oldNormalized, newNormalized, symbols, candidates,
+                    unmappedNew, oldContexts, newContexts, weightContent, weightContext, threshold, score, metrics);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Pluggable output format for a LineMapping.
+ *
+ * Writers buffer internally and flush, but do not close, the stream they are given, so
+ * they can write to System.out. Blank lines are never reported.
+ */
+public interface MappingWriter {
+
+    void write(LineMapping mapping, OutputStream out) throws IOException;
+
+    /** Format names accepted by {@link #named}. */
+    String[] NAMES = { "text", "xml", "binary" };
+
+    /**
+     * Looks a writer up by name: "text" (default, "old -> new" lines), "xml" (the
+     * dataset's LOCATION elements) or "binary" (compact varint encoding).
+     */
+    static MappingWriter named(String name) {
+        switch (name) {
+            case "text":
+                return new TextMappingWriter();
+            case "xml":
+                return new XmlMappingWriter();
+            case "binary":
+                return new BinaryMappingWriter();
+            default:
+                throw new IllegalArgumentException("Unknown output format '" + name + "', expected one of "
+                        + Arrays.toString(NAMES));
+        }
+    }
+}
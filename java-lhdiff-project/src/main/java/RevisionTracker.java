@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Tracks lines through an ordered list of revisions of one file.
+ *
+ * Every revision is read, normalized and SimHashed once, then serves as the new side of
+ * one diff and the old side of the next. The per-step mappings are kept as primitive
+ * arrays and composed on demand. A line that was split is followed to the first line
+ * of its run.
+ */
+public final class RevisionTracker {
+    private final LHDiffEngine engine;
+
+    public RevisionTracker(LHDiffEngine engine) {
+        this.engine = engine;
+    }
+
+    public History track(List<Path> revisions) throws IOException {
+        List<LineSnapshot> snapshots = new ArrayList<>(revisions.size());
+        for (Path revision : revisions) snapshots.add(engine.load(revision));
+        return trackSnapshots(snapshots);
+    }
+
+    public History trackSnapshots(List<LineSnapshot> revisions) {
+        if (revisions.isEmpty()) throw new IllegalArgumentException("no revisions");
+        int window = engine.config().windowSize;
+        // SimHashes first, so the parallel diffs below only read the shared snapshots
+        revisions.parallelStream().forEach(s -> s.lineSimhashes(window));
+        LineMapping[] steps = new LineMapping[revisions.size() - 1];
+        IntStream.range(0, steps.length).parallel()
+                .forEach(k -> steps[k] = engine.diff(revisions.get(k), revisions.get(k + 1)));
+
+        int[] sizes = new int[revisions.size()];
+        for (int k = 0; k < sizes.length; k++) sizes[k] = revisions.get(k).size();
+        return new History(Arrays.asList(steps), sizes);
+    }
+
+    /** The mappings between consecutive revisions and their compositions. */
+    public static final class History {
+        public final List<LineMapping> steps; // steps.get(k) maps revision k to k + 1
+        private final int[] sizes;
+        private final int[][] forward;  // forward[k][i]: line of revision k + 1 for line i of k
+        private final int[][] backward; // backward[k][j]: first line of revision k mapped to line j of k + 1
+
+        History(List<LineMapping> steps, int[] sizes) {
+            this.steps = Collections.unmodifiableList(steps);
+            this.sizes = sizes;
+            this.forward = new int[steps.size()][];
+            this.backward = new int[steps.size()][];
+            for (int k = 0; k < steps.size(); k++) {
+                LineMapping step = steps.get(k);
+                forward[k] = step.newStart;
+                int[] inverse = new int[step.newSize];
+                Arrays.fill(inverse, -1);
+                for (int i = 0; i < step.oldSize(); i++) {
+                    if (!step.isMapped(i)) continue;
+                    for (int j = step.newStart[i]; j <= step.newEnd[i]; j++) {
+                        if (inverse[j] < 0) inverse[j] = i;
+                    }
+                }
+                backward[k] = inverse;
+            }
+        }
+
+        public int revisionCount() {
+            return sizes.length;
+        }
+
+        public int size(int revision) {
+            return sizes[revision];
+        }
+
+        /**
+         * Location of {@code line} of {@code revision} in every revision, 0-based, -1 where
+         * it does not exist. Earlier revisions are found through the inverse mappings.
+         */
+        public int[] locate(int revision, int line) {
+            int[] location = new int[sizes.length];
+            location[revision] = line;
+            for (int k = revision; k < forward.length; k++) {
+                location[k + 1] = location[k] < 0 ? -1 : forward[k][location[k]];
+            }
+            for (int k = revision - 1; k >= 0; k--) {
+                location[k] = location[k + 1] < 0 ? -1 : backward[k][location[k + 1]];
+            }
+            return location;
+        }
+
+        /**
+         * Locations of all lines of {@code from} in revision {@code to}, in either direction,
+         * composed one step at a time.
+         */
+        public int[] compose(int from, int to) {
+            int[] location = new int[sizes[from]];
+            for (int i = 0; i < location.length; i++) location[i] = i;
+            if (from <= to) {
+                for (int k = from; k < to; k++) location = apply(location, forward[k]);
+            } else {
+                for (int k = from - 1; k >= to; k--) location = apply(location, backward[k]);
+            }
+            return location;
+        }
+
+        /** compose(from, k) for every revision k: {@code table[k][i]} is line i of {@code from} in k. */
+        public int[][] table(int from) {
+            int[][] table = new int[sizes.length][];
+            int[] identity = new int[sizes[from]];
+            for (int i = 0; i < identity.length; i++) identity[i] = i;
+            table[from] = identity;
+            for (int k = from; k < forward.length; k++) table[k + 1] = apply(table[k], forward[k]);
+            for (int k = from - 1; k >= 0; k--) table[k] = apply(table[k + 1], backward[k]);
+            return table;
+        }
+
+        private static int[] apply(int[] location, int[] step) {
+            int[] next = new int[location.length];
+            for (int i = 0; i < location.length; i++) next[i] = location[i] < 0 ? -1 : step[location[i]];
+            return next;
+        }
+    }
+}
@@ -1,7 +1,16 @@
 import java.util.*;
 
 public class SimhashGenerator {
+    // Bump whenever line SimHashes change (hashing or context extraction); cached SimHashes are keyed by it.
+    public static final int VERSION = 1;
+
     public static class LineSimhash {
+        // Unmapped old x new line pairs from which Step 3 switches to a SimhashIndex
+        static final long INDEX_MIN_PAIRS = 1L << 22;
+        // The index is dropped when sampled probes visit more than 1 / INDEX_MAX_SHARE of the new lines
+        static final int INDEX_MAX_SHARE = 16;
+        private static final int INDEX_SAMPLE = 32;
+
         public final int index;
         public final long ContentSimhash;// captures the line itself
         public final long ContextSimhash;// captures the surrounding normalized lines
@@ -18,22 +27,6 @@ public class SimhashGenerator {
                                                                    // find Hamming distance
         }
 
-        // Used to store a “possible match of files”
-        public static class Candidate {
-            public final int newIndex;// will store index of line in NEW file might match that old line
-            public final int hammingDistance;// how similar they are
-            // Creating a Candidate object for storing the index and similarity distance
-
-            public Candidate(int newIndex, int hammingDistance) {
-                this.newIndex = newIndex;
-                this.hammingDistance = hammingDistance;
-            }
-
-            @Override
-            public String toString() {
-                return "Candidate{newIndex=" + newIndex + ", distance=" + hammingDistance + "}";
-            }
-        }
         /*
          * We normalize again in Step 3 because Simhash is very sensitive to tiny
          * differences.
@@ -99,49 +92,18 @@ public class SimhashGenerator {
              * Each token contributes to the bitVector)
              */
             String[] tokens = text.split("\\s+");
-            int[] bitVector = new int[64];// indices to represent the bit positions (0–63) of the hash
-            // Each token is hashed into a 64-bit hash value using hash64(token)
+            // Each token is hashed into a 64-bit hash value using hash64(token); every bit of
+            // it votes +1 (set) or -1 (clear) for that bit of the SimHash. The accumulator
+            // counts eight bit positions per addition (see SimhashKernels).
+            SimhashKernels.VoteAccumulator votes = new SimhashKernels.VoteAccumulator();
             for (String token : tokens) {
                 if (token.isEmpty()) {
                     continue;
                 }
-                long hash = hash64(token); // Using .util.* library: string gets turned into a 64 bit number we get the
-                                           // numeric fingerprint” of that word.
-                // *-----SimHashlook does not read all 64 bits at once so looked at each bit at
-                // time so it needs to update the vector one bit at a time.--------/
-                for (int bit = 0; bit < 64; bit++) {
-
-                    // : 1L is just 1 stored in a long type
-                    // << (left shift operator)take the bits of a and shift them to the left by n
-                    // positions
-
-                    // A bitmask → creating a number that has only one bit turned on all other
-                    // values are zero other than one 1
-                    long bitmask = 1L << bit;
-                    if ((hash & bitmask) != 0) {//
-                        /*
-                         * It compares each bit: AND keeps only the bit that both numbers have ON for
-                         * not zero
-                         * f AND is non-zero → that bit is 1 If AND is zero → that bit is 0.
-                         */
-                        bitVector[bit] += 1; // If the bit was 1: increase weights stored inside the index
-                    } else {
-                        bitVector[bit] -= 1; // If the bit was 0:Decrease the weight stored at this bit index
-
-                    }
-
-                }
-            }
-            /*--------- final 64-bit SimHash-----------*/
-            long simhash = 0L;// empty SimHash all bits = 0
-            for (int bit = 0; bit < 64; bit++) {// Loop through all indices (bit positions)
-                if (bitVector[bit] > 0) {// If the value at that index is positive then SimHash bit should be 1
-                    // at the empty SimHash all bits = 0 and push the left side using <<
-                    simhash |= (1L << bit);// creates a mask with only this bit = 1 * |= sets that bit in simhash to 1
-
-                }
+                votes.add(hash64(token));
             }
-            return simhash;
+            /*--------- final 64-bit SimHash: bits with a positive vote are 1 -----------*/
+            return votes.simhash();
         }
 
         // This converts a string into a 64-bit numeric fingerprint
@@ -173,39 +135,113 @@ public class SimhashGenerator {
          * The SimHash of the lineContext
          */
         public LineSimhash[] buildLineSimhashes(List<String> lines, int windowSize) {
-            LineSimhash[] result = new LineSimhash[lines.size()];
-            for (int i = 0; i < lines.size(); i++) {
-                String normalizedContent = normalizeLine(lines.get(i));// Normalize the content of the current line
-                String context = extractContext(lines, i, windowSize); //// Extract context text
-                /*------  Compute a 64-bit SimHash-------*/
-                long contentSimhash = computeSimhash(normalizedContent);
-                long contextSimhash = computeSimhash(context);
+            /*
+             * Same result as computeSimhash(normalizeLine(line)) and
+             * computeSimhash(extractContext(lines, i, windowSize)) for every line, but each
+             * line is tokenized and hashed only once. A SimHash only depends on the sum of
+             * its tokens' +1/-1 bit votes, so the context votes of line i are the votes of
+             * the lines in [i - windowSize, i + windowSize] minus the line's own votes. That
+             * window sum is updated as it slides: the line entering is added, the line
+             * leaving is subtracted. Per-line votes are kept in a ring buffer just large
+             * enough for the window.
+             */
+            int n = lines.size();
+            LineSimhash[] result = new LineSimhash[n];
+            int ring = 2 * windowSize + 2;
+            int[][] votes = new int[ring][64];
+            int[] window = new int[64];
+            SimhashKernels.VoteAccumulator acc = new SimhashKernels.VoteAccumulator();
+
+            // Window of line 0 is [0, windowSize]
+            for (int j = 0; j <= windowSize && j < n; j++) {
+                tokenVotes(lines.get(j), acc, votes[j % ring]);
+                add(window, votes[j % ring], 1);
+            }
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    int entering = i + windowSize;
+                    if (entering < n) {
+                        tokenVotes(lines.get(entering), acc, votes[entering % ring]);
+                        add(window, votes[entering % ring], 1);
+                    }
+                    int leaving = i - windowSize - 1;
+                    if (leaving >= 0) {
+                        add(window, votes[leaving % ring], -1);
+                    }
+                }
+                int[] own = votes[i % ring];
+                long contentSimhash = 0L;
+                long contextSimhash = 0L;
+                for (int bit = 0; bit < 64; bit++) {
+                    if (own[bit] > 0) contentSimhash |= 1L << bit;
+                    if (window[bit] - own[bit] > 0) contextSimhash |= 1L << bit;
+                }
                 result[i] = new LineSimhash(i, contentSimhash, contextSimhash);
             }
             return result;
         }
 
+        private static void add(int[] sum, int[] votes, int sign) {
+            for (int bit = 0; bit < 64; bit++) {
+                sum[bit] += sign * votes[bit];
+            }
+        }
+
+        /*
+         * Bit votes of all tokens of normalizeLine(line), written into out. Tokens are
+         * hashed straight from the line's characters, the same way hash64 hashes a
+         * token string. ASCII lines are lowercased on the fly; other lines go through
+         * normalizeLine first because toLowerCase can change their length.
+         */
+        private void tokenVotes(String line, SimhashKernels.VoteAccumulator acc, int[] out) {
+            acc.reset();
+            if (line == null) {
+                acc.votes(out);
+                return;
+            }
+            boolean ascii = true;
+            for (int i = 0; i < line.length() && ascii; i++) {
+                ascii = line.charAt(i) < 128;
+            }
+            String text = ascii ? line : normalizeLine(line);
+            // trim(): drop leading and trailing characters <= ' '
+            int from = 0;
+            int to = text.length();
+            while (from < to && text.charAt(from) <= ' ') from++;
+            while (to > from && text.charAt(to - 1) <= ' ') to--;
+
+            int i = from;
+            while (i < to) {
+                // split("\\s+"): tokens are runs of anything but [ \t\n\x0B\f\r]
+                while (i < to && isSpace(text.charAt(i))) i++;
+                if (i == to) break;
+                long h = 1125899906842597L;
+                while (i < to && !isSpace(text.charAt(i))) {
+                    char c = text.charAt(i++);
+                    if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+                    h = 31L * h + c;
+                }
+                acc.add(h);
+            }
+            acc.votes(out);
+        }
+
+        private static boolean isSpace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+        }
+
         /*
          * find the top-k most similar lines in the new file, using SimHash + Hamming
-         * distance, while skipping lines that are already mapped
+         * distance, for every old line that is still unmapped
          */
-        public static Map<Integer, List<Candidate>> generateCandidates(
+        public static CandidateTable generateCandidates(
                 List<String> oldLines,
                 List<String> newLines,
-                Set<Integer> mappedOld,
-                Set<Integer> mappedNew,
+                BitSet unmappedOld,
+                BitSet unmappedNew,
                 int windowSize,
                 int k// For each old line, keep at most k best candidates from new lines
         ) {
-            if (mappedOld == null) {
-                mappedOld = Collections.emptySet();
-            }
-            if (mappedNew == null) {
-                mappedNew = Collections.emptySet();
-            }
-            // Call buildLineSimhashes would returns an array of LineSimhash objects, one
-            // per line
-            
             // NOTE: The methods buildLineSimhashes, normalizeLine, extractContext, etc.
             // are NOT static, but are required here. This indicates a design flaw.
             // For now, we instantiate a dummy LineSimhash object to call the non-static methods.
@@ -213,40 +249,127 @@ public class SimhashGenerator {
             
             LineSimhash[] oldSimhashes = dummy.buildLineSimhashes(oldLines, windowSize);
             LineSimhash[] newSimhashes = dummy.buildLineSimhashes(newLines, windowSize);
+            return generateCandidates(oldSimhashes, newSimhashes, unmappedOld, unmappedNew, k);
+        }
 
-            Map<Integer, List<Candidate>> result = new HashMap<>();
+        /*
+         * Same as above, for SimHashes that were already built (for example kept on a
+         * LineSnapshot or loaded from SnapshotCache).
+         *
+         * Small inputs compare every unmapped old line with every unmapped new line.
+         * From INDEX_MIN_PAIRS pairs on, the new lines go into a SimhashIndex and each
+         * old line only looks at the new lines in its probed buckets. That loses recall:
+         * every line within SimhashIndex.RADIUS bits is still found, but more distant
+         * ones mostly are not, so an old line can get fewer than k candidates. Line
+         * SimHashes of real code are strongly clustered, though, and then a probe visits
+         * a large share of the new lines and is slower than the plain scan. So the index
+         * first probes a sample of old lines and is only used when they visit at most
+         * 1 / INDEX_MAX_SHARE of the new lines on average; otherwise every line is scanned.
+         *
+         * Distances are at most 64, so instead of a heap each old line counts its
+         * distances into 65 buckets, finds the cut-off distance of its k-th best
+         * candidate, and places the winners straight into their sorted slots:
+         * ascending distance, then ascending new line index.
+         */
+        public static CandidateTable generateCandidates(
+                LineSimhash[] oldSimhashes,
+                LineSimhash[] newSimhashes,
+                BitSet unmappedOld,
+                BitSet unmappedNew,
+                int k) {
+            long pairs = (long) unmappedOld.cardinality() * unmappedNew.cardinality();
+            return generateCandidates(oldSimhashes, newSimhashes, unmappedOld, unmappedNew, k,
+                    pairs >= INDEX_MIN_PAIRS);
+        }
+
+        static CandidateTable generateCandidates(
+                LineSimhash[] oldSimhashes,
+                LineSimhash[] newSimhashes,
+                BitSet unmappedOld,
+                BitSet unmappedNew,
+                int k,
+                boolean useIndex) {
+            // Compact copy of the unmapped new lines
+            int m = unmappedNew.cardinality();
+            int[] newIdx = new int[m];
+            long[] newHash = new long[m];
+            int n = 0;
+            for (int j = unmappedNew.nextSetBit(0); j >= 0 && j < newSimhashes.length; j = unmappedNew.nextSetBit(j + 1)) {
+                newIdx[n] = j;
+                newHash[n] = newSimhashes[j].CombinedSimhash;
+                n++;
+            }
+            newHash = Arrays.copyOf(newHash, n);
+
+            SimhashIndex index = useIndex ? new SimhashIndex(newHash) : null;
+            int[] positions = index != null ? new int[n] : null;
+            if (index != null && !selective(index, oldSimhashes, unmappedOld, positions)) {
+                index = null;
+                positions = null;
+            }
+            int count = n;
 
-            for (LineSimhash oldLineHash : oldSimhashes) {
-                int oldIdx = oldLineHash.index;
-                if (mappedOld.contains(oldIdx)) {
-                    continue; // skip already mapped old lines
+            CandidateTable.Builder table = new CandidateTable.Builder(oldSimhashes.length);
+            int[] distances = new int[n];
+            int[] bucket = new int[65];
+            int[] slotNew = new int[Math.max(0, Math.min(k, n))];
+            int[] slotDist = new int[slotNew.length];
+
+            for (int oldIdx = unmappedOld.nextSetBit(0); oldIdx >= 0 && oldIdx < oldSimhashes.length;
+                    oldIdx = unmappedOld.nextSetBit(oldIdx + 1)) {
+                long hash = oldSimhashes[oldIdx].CombinedSimhash;
+                Arrays.fill(bucket, 0);
+                if (index != null) {
+                    count = index.probe(hash, positions);
+                    SimhashKernels.hammingGather(hash, newHash, positions, count, distances, bucket);
+                } else {
+                    SimhashKernels.hammingScan(hash, newHash, count, distances, bucket);
                 }
-                // use a max-heap of size at most k:
-                // worst candidate is always on top keep only best (most similar) new lines for
-                // each old line.
-                // when found a better one, we kick out the worst one.
-                PriorityQueue<Candidate> maxHeap = new PriorityQueue<>(k,
-                        (a, b) -> Integer.compare(b.hammingDistance, a.hammingDistance));
-                for (LineSimhash newLineHash : newSimhashes) {
-                    int newIdx = newLineHash.index;
-                    if (mappedNew.contains(newIdx)) {
-                        continue; // skip already mapped new lines
-                    }
-                    int distance = dummy.hammingDistance(oldLineHash.CombinedSimhash, newLineHash.CombinedSimhash);
-                    if (maxHeap.size() < k) {
-                        maxHeap.offer(new Candidate(newIdx, distance));
-                    } else if (distance < maxHeap.peek().hammingDistance) {
-                        maxHeap.poll();
-                        maxHeap.offer(new Candidate(newIdx, distance));
+                table.countComparisons(count);
+                int keep = Math.min(slotNew.length, count);
+                // Turn the counts into slot offsets; distances past the cut-off get nothing
+                int taken = 0;
+                int cutoff = 64;
+                for (int d = 0; d <= 64; d++) {
+                    int c = bucket[d];
+                    bucket[d] = taken;
+                    if (taken + c >= keep) {
+                        cutoff = d;
+                        break;
                     }
+                    taken += c;
+                }
+                for (int q = 0; q < count; q++) {
+                    int d = distances[q];
+                    if (d > cutoff) continue;
+                    int slot = bucket[d];
+                    if (slot >= keep) continue; // the cut-off bucket is full
+                    slotNew[slot] = newIdx[positions != null ? positions[q] : q];
+                    slotDist[slot] = d;
+                    bucket[d] = slot + 1;
+                }
+                for (int s = 0; s < keep; s++) {
+                    table.add(oldIdx, slotNew[s], slotDist[s]);
                 }
-                // Extract and sort candidates by distance ascending
-                List<Candidate> candidates = new ArrayList<>(maxHeap);
-                candidates.sort(Comparator.comparingInt(c -> c.hammingDistance));
-                result.put(oldIdx, candidates);
             }
+            return table.build();
+        }
 
-            return result;
+        // Whether probes for evenly spread sample old lines visit few enough new lines
+        private static boolean selective(SimhashIndex index, LineSimhash[] oldSimhashes, BitSet unmappedOld,
+                                         int[] positions) {
+            int lines = unmappedOld.cardinality();
+            int step = Math.max(1, lines / INDEX_SAMPLE);
+            long visited = 0;
+            int sampled = 0;
+            int k = 0;
+            for (int oldIdx = unmappedOld.nextSetBit(0); oldIdx >= 0 && oldIdx < oldSimhashes.length;
+                    oldIdx = unmappedOld.nextSetBit(oldIdx + 1), k++) {
+                if (k % step != 0) continue;
+                visited += index.probe(oldSimhashes[oldIdx].CombinedSimhash, positions);
+                sampled++;
+            }
+            return visited * INDEX_MAX_SHARE <= (long) sampled * index.size();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * Banded (multi-table) index over 64-bit SimHashes for Step 3, with multi-probing.
+ *
+ * The hash is cut into {@code bands} blocks, and each block gets its own table from
+ * block value to the entries that have it. The block width grows with log2 of the
+ * number of entries, so a bucket holds about one entry whatever the file size and a
+ * probe costs about the same for 2 000 lines as for 1 000 000: Step 3 stays near
+ * linear instead of quadratic. Wider blocks mean fewer of them, so a probe also
+ * visits every bucket within {@code flips} bits of the query's block. Two hashes
+ * that differ in at most {@code bands * (flips + 1) - 1} bits must agree on some block
+ * up to {@code flips} bits, so every entry within that distance, and always within
+ * {@link #RADIUS} bits, is found. Entries further away are only found when they
+ * happen to land in a probed bucket: a caller that keeps the k nearest entries can
+ * get fewer than k, or miss distant ones a full scan would have kept.
+ *
+ * Block values are hashed into tables of about as many buckets as entries, stored like
+ * CandidateTable: one offsets array and one entries array per band, no per-bucket objects.
+ */
+public final class SimhashIndex {
+    /** Every entry within this many bits of a probed hash is found. */
+    public static final int RADIUS = 7;
+    private static final int MIN_BANDS = 3;
+    private static final int MAX_BANDS = RADIUS + 1;
+
+    private final long[] hashes;
+    private final int bands;
+    private final int flips;
+    private final int[] shift;    // lowest bit of each band
+    private final long[] mask;    // band bits, shifted down
+    private final int tableBits;
+    private final int[][] offsets;
+    private final int[][] entries;
+    // stamp[p] == query marks entry p as already probed by the current query
+    private final int[] stamp;
+    private int query;
+
+    /** Indexes {@code hashes}; probe results are positions into this array. */
+    public SimhashIndex(long[] hashes) {
+        this.hashes = hashes;
+        this.stamp = new int[hashes.length];
+        // About log2(m) bits per band; fewer bands are made up for with more flips
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, hashes.length - 1));
+        this.bands = Math.max(MIN_BANDS, Math.min(MAX_BANDS, 64 / Math.max(1, bits)));
+        this.flips = (RADIUS + bands) / bands - 1; // smallest with bands * (flips + 1) > RADIUS
+        this.tableBits = Math.max(8, Math.min(bits, 64 / bands));
+        this.shift = new int[bands];
+        this.mask = new long[bands];
+        for (int band = 0, low = 0; band < bands; band++) {
+            int width = (64 - low) / (bands - band);
+            shift[band] = low;
+            mask[band] = width == 64 ? -1L : (1L << width) - 1;
+            low += width;
+        }
+        this.offsets = new int[bands][];
+        this.entries = new int[bands][];
+
+        int buckets = 1 << tableBits;
+        for (int band = 0; band < bands; band++) {
+            int[] start = new int[buckets + 1];
+            for (long h : hashes) start[bucket(band, h >>> shift[band] & mask[band])]++;
+            int sum = 0;
+            for (int b = 0; b < buckets; b++) {
+                int c = start[b];
+                start[b] = sum;
+                sum += c;
+            }
+            start[buckets] = sum;
+            int[] fill = Arrays.copyOf(start, buckets);
+            int[] list = new int[hashes.length];
+            for (int p = 0; p < hashes.length; p++) {
+                list[fill[bucket(band, hashes[p] >>> shift[band] & mask[band])]++] = p;
+            }
+            offsets[band] = start;
+            entries[band] = list;
+        }
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+
+    /** Entries within this many bits of a probed hash are always found; at least {@link #RADIUS}. */
+    public int radius() {
+        return bands * (flips + 1) - 1;
+    }
+
+    /**
+     * Writes the distinct positions that share a probed bucket with {@code hash} into
+     * {@code out}, in ascending order, and returns how many there are. {@code out} must
+     * have room for {@link #size()} positions. Not thread-safe.
+     */
+    public int probe(long hash, int[] out) {
+        if (++query == 0) { // stamps wrapped around: start over
+            Arrays.fill(stamp, 0);
+            query = 1;
+        }
+        int count = 0;
+        for (int band = 0; band < bands; band++) {
+            long value = hash >>> shift[band] & mask[band];
+            int width = Long.bitCount(mask[band]);
+            count = collect(band, value, count, out);
+            if (flips == 0) continue;
+            for (int i = 0; i < width; i++) {
+                long one = value ^ (1L << i);
+                count = collect(band, one, count, out);
+                if (flips == 1) continue;
+                for (int j = i + 1; j < width; j++) count = collect(band, one ^ (1L << j), count, out);
+            }
+        }
+        Arrays.sort(out, 0, count);
+        return count;
+    }
+
+    private int collect(int band, long value, int count, int[] out) {
+        int bucket = bucket(band, value);
+        int[] list = entries[band];
+        for (int e = offsets[band][bucket], end = offsets[band][bucket + 1]; e < end; e++) {
+            int p = list[e];
+            if (stamp[p] != query && (hashes[p] >>> shift[band] & mask[band]) == value) {
+                stamp[p] = query;
+                out[count++] = p;
+            }
+        }
+        return count;
+    }
+
+    // Spreads a band value over the table (Fibonacci hashing)
+    private int bucket(int band, long value) {
+        return (int) (((value + band) * 0x9E3779B97F4A7C15L) >>> (64 - tableBits));
+    }
+}
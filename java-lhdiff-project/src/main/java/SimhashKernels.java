@@ -0,0 +1,123 @@
+/**
+ * Word-parallel inner loops of Step 3.
+ *
+ * SimHash votes are counted eight bit positions at a time: byte lane b of
+ * {@code lanes[k]} counts how many tokens had bit {@code 8 * b + k} set, so adding one
+ * token hash is eight long additions instead of 64 separate counter updates. A lane
+ * byte overflows after 255 tokens, so the lanes are flushed into int counters before
+ * that. Hamming distances are computed for blocks of four hashes per iteration and
+ * counted into the 65 distance buckets used by the top-k selection in the same pass.
+ */
+public final class SimhashKernels {
+    private static final long LANE_BITS = 0x0101010101010101L;
+    private static final int LANE_LIMIT = 255;
+
+    private SimhashKernels() {
+    }
+
+    /** Accumulates token hashes into per-bit set counts. Reusable via {@link #reset()}. */
+    public static final class VoteAccumulator {
+        private final long[] lanes = new long[8];
+        private final int[] ones = new int[64];
+        private int pending; // tokens added to lanes since the last flush
+        private int tokens;
+
+        public void reset() {
+            for (int k = 0; k < 8; k++) lanes[k] = 0L;
+            for (int bit = 0; bit < 64; bit++) ones[bit] = 0;
+            pending = 0;
+            tokens = 0;
+        }
+
+        public void add(long hash) {
+            if (pending == LANE_LIMIT) flush();
+            lanes[0] += hash & LANE_BITS;
+            lanes[1] += (hash >>> 1) & LANE_BITS;
+            lanes[2] += (hash >>> 2) & LANE_BITS;
+            lanes[3] += (hash >>> 3) & LANE_BITS;
+            lanes[4] += (hash >>> 4) & LANE_BITS;
+            lanes[5] += (hash >>> 5) & LANE_BITS;
+            lanes[6] += (hash >>> 6) & LANE_BITS;
+            lanes[7] += (hash >>> 7) & LANE_BITS;
+            pending++;
+            tokens++;
+        }
+
+        /** Writes the +1/-1 vote sum of every bit (set count minus clear count) into {@code votes}. */
+        public void votes(int[] votes) {
+            flush();
+            for (int bit = 0; bit < 64; bit++) votes[bit] = 2 * ones[bit] - tokens;
+        }
+
+        /** The SimHash of the tokens added so far: bit set where more tokens had it set than clear. */
+        public long simhash() {
+            flush();
+            long simhash = 0L;
+            for (int bit = 0; bit < 64; bit++) {
+                if (2 * ones[bit] > tokens) simhash |= 1L << bit;
+            }
+            return simhash;
+        }
+
+        private void flush() {
+            if (pending == 0) return;
+            for (int k = 0; k < 8; k++) {
+                long lane = lanes[k];
+                for (int b = 0; b < 8; b++) ones[8 * b + k] += (int) (lane >>> (8 * b)) & 0xFF;
+                lanes[k] = 0L;
+            }
+            pending = 0;
+        }
+    }
+
+    /**
+     * Hamming distances from {@code hash} to {@code hashes[0..count)}, written into
+     * {@code out}, with each distance also counted in {@code histogram} (65 entries).
+     */
+    public static void hammingScan(long hash, long[] hashes, int count, int[] out, int[] histogram) {
+        int i = 0;
+        for (; i + 4 <= count; i += 4) {
+            int d0 = Long.bitCount(hash ^ hashes[i]);
+            int d1 = Long.bitCount(hash ^ hashes[i + 1]);
+            int d2 = Long.bitCount(hash ^ hashes[i + 2]);
+            int d3 = Long.bitCount(hash ^ hashes[i + 3]);
+            out[i] = d0;
+            out[i + 1] = d1;
+            out[i + 2] = d2;
+            out[i + 3] = d3;
+            histogram[d0]++;
+            histogram[d1]++;
+            histogram[d2]++;
+            histogram[d3]++;
+        }
+        for (; i < count; i++) {
+            int d = Long.bitCount(hash ^ hashes[i]);
+            out[i] = d;
+            histogram[d]++;
+        }
+    }
+
+    /** Like {@link #hammingScan}, for the hashes at {@code positions[0..count)}. */
+    public static void hammingGather(long hash, long[] hashes, int[] positions, int count, int[] out, int[] histogram) {
+        int i = 0;
+        for (; i + 4 <= count; i += 4) {
+            int d0 = Long.bitCount(hash ^ hashes[positions[i]]);
+            int d1 = Long.bitCount(hash ^ hashes[positions[i + 1]]);
+            int d2 = Long.bitCount(hash ^ hashes[positions[i + 2]]);
+            int d3 = Long.bitCount(hash ^ hashes[positions[i + 3]]);
+            out[i] = d0;
+            out[i + 1] = d1;
+            out[i + 2] = d2;
+            out[i + 3] = d3;
+            histogram[d0]++;
+            histogram[d1]++;
+            histogram[d2]++;
+            histogram[d3]++;
+        }
+        for (; i < count; i++) {
+            int d = Long.bitCount(hash ^ hashes[positions[i]]);
+            out[i] = d;
+            histogram[d]++;
+        }
+    }
+}
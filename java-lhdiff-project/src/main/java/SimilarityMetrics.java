@@ -6,30 +6,197 @@
 import java.util.*;
 
 public class SimilarityMetrics {
-  private static int calculateLevenshteinDistance(String s1, String s2) {
-        // Implements the standard dynamic programming approach for Levenshtein Distance
+    // Strings up to this length use the bit-parallel algorithm (one machine word)
+    private static final int WORD = 64;
+    private static final int NONE = Integer.MIN_VALUE / 2;
+
+    // Per-thread scratch space, so the resolver can run on several threads
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch {
+        final long[] asciiPeq = new long[128];
+        char[] otherChars = new char[8];
+        long[] otherPeq = new long[8];
+        int[] prev = new int[64];
+        int[] cur = new int[64];
+        long cells; // DP cells computed on this thread so far, see dpCells()
+    }
+
+    /**
+     * DP cells the distance computations of the calling thread have covered so far; a
+     * bit-parallel step counts as many cells as the pattern is long. Only differences
+     * between two readings on the same thread mean anything.
+     */
+    static long dpCells() {
+        return SCRATCH.get().cells;
+    }
+
+    /**
+     * The distance used for content similarity, computed only as far as needed to tell
+     * whether it is at most {@code maxDistance}.
+     *
+     * This is the value of the original single-row DP, whose deletion step carries no
+     * +1: once the first character of {@code s2} has been passed, skipping characters
+     * of {@code s1} is free. What remains is the number of characters of {@code s2}
+     * left unmatched by a longest common subsequence, where {@code s2}'s first
+     * character may only be matched by {@code s1}'s first character; an empty
+     * {@code s2} costs the length of {@code s1}. So the distance is
+     * {@code |s2| - LCS}, and it is at most {@code maxDistance} exactly when the LCS
+     * reaches {@code |s2| - maxDistance}.
+     *
+     * @return the exact distance if it is at most {@code maxDistance}, otherwise any
+     *         value greater than {@code maxDistance}
+     */
+    static int calculateLevenshteinDistance(CharSequence s1, CharSequence s2, int maxDistance) {
         int m = s1.length();
         int n = s2.length();
         if (m == 0) return n;
         if (n == 0) return m;
+        int from2 = s1.charAt(0) == s2.charAt(0) ? 0 : 1;
+        int minLcs = n - maxDistance;
+        if (minLcs > Math.min(m, n - from2)) return maxDistance + 1;
+        return n - lcs(s1, 0, m, s2, from2, n, Math.max(0, minLcs));
+    }
 
-        int[] costs = new int[n + 1];
-        for (int j = 0; j <= n; j++) costs[j] = j;
+    /*
+     * Length of a longest common subsequence of a[aFrom, aTo) and b[bFrom, bTo), exact
+     * when it is at least minLcs; otherwise some smaller value. Common prefixes and
+     * suffixes are taken off first. If the shorter remainder fits in a word, the
+     * bit-parallel LCS of Allison-Dix and Hyyrö (the LCS form of Myers' algorithm)
+     * handles one character of the longer string per step. Longer strings use a DP
+     * restricted to the diagonal band that an alignment reaching minLcs can use
+     * (Ukkonen's cut-off). Both stop once minLcs is out of reach.
+     */
+    private static int lcs(CharSequence a, int aFrom, int aTo, CharSequence b, int bFrom, int bTo, int minLcs) {
+        int common = 0;
+        while (aFrom < aTo && bFrom < bTo && a.charAt(aFrom) == b.charAt(bFrom)) {
+            aFrom++;
+            bFrom++;
+            common++;
+        }
+        while (aFrom < aTo && bFrom < bTo && a.charAt(aTo - 1) == b.charAt(bTo - 1)) {
+            aTo--;
+            bTo--;
+            common++;
+        }
+        int m = aTo - aFrom;
+        int n = bTo - bFrom;
+        if (m == 0 || n == 0) return common;
+        minLcs -= common;
+        if (minLcs > Math.min(m, n)) return common + Math.min(m, n);
+        Scratch scratch = SCRATCH.get();
+        if (Math.min(m, n) <= WORD) {
+            return common + (m <= n
+                    ? bitParallel(a, aFrom, m, b, bFrom, n, minLcs, scratch)
+                    : bitParallel(b, bFrom, n, a, aFrom, m, minLcs, scratch));
+        }
+        return common + banded(a, aFrom, m, b, bFrom, n, minLcs, scratch);
+    }
+
+    private static int bitParallel(CharSequence pattern, int pFrom, int m, CharSequence text, int tFrom, int n,
+                                   int minLcs, Scratch scratch) {
+        // Match masks: bit i of peq(c) is set when pattern[i] == c
+        long[] ascii = scratch.asciiPeq;
+        int others = 0;
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(pFrom + i);
+            if (c < 128) {
+                ascii[c] |= 1L << i;
+            } else {
+                int k = 0;
+                while (k < others && scratch.otherChars[k] != c) k++;
+                if (k == others) {
+                    if (others == scratch.otherChars.length) {
+                        scratch.otherChars = Arrays.copyOf(scratch.otherChars, others * 2);
+                        scratch.otherPeq = Arrays.copyOf(scratch.otherPeq, others * 2);
+                    }
+                    scratch.otherChars[k] = c;
+                    scratch.otherPeq[k] = 0L;
+                    others++;
+                }
+                scratch.otherPeq[k] |= 1L << i;
+            }
+        }
+
+        // Zero bits of v mark pattern positions that end a longer common subsequence
+        long mask = m == WORD ? -1L : (1L << m) - 1;
+        long v = -1L;
+        int result = -1;
+        int steps = n;
+        for (int j = 0; j < n; j++) {
+            char c = text.charAt(tFrom + j);
+            long eq;
+            if (c < 128) {
+                eq = ascii[c];
+            } else {
+                eq = 0L;
+                for (int k = 0; k < others; k++) {
+                    if (scratch.otherChars[k] == c) {
+                        eq = scratch.otherPeq[k];
+                        break;
+                    }
+                }
+            }
+            long u = v & eq;
+            v = (v + u) | (v - u);
+            // Each remaining text character adds at most one
+            int reachable = Long.bitCount(~v & mask) + (n - 1 - j);
+            if (reachable < minLcs) {
+                result = reachable;
+                steps = j + 1;
+                break;
+            }
+        }
+        if (result < 0) result = Long.bitCount(~v & mask);
+        scratch.cells += (long) m * steps;
+
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(pFrom + i);
+            if (c < 128) ascii[c] = 0L;
+        }
+        return result;
+    }
+
+    // An alignment reaching minLcs skips at most m - minLcs characters of a and
+    // n - minLcs of b, so it stays within i - (m - minLcs) <= j <= i + (n - minLcs).
+    private static int banded(CharSequence a, int aFrom, int m, CharSequence b, int bFrom, int n,
+                              int minLcs, Scratch scratch) {
+        int below = m - minLcs;
+        int above = n - minLcs;
+        if (scratch.prev.length < n + 2) {
+            scratch.prev = new int[n + 2];
+            scratch.cur = new int[n + 2];
+        }
+        int[] prev = scratch.prev;
+        int[] cur = scratch.cur;
+        int hi = Math.min(n, above);
+        for (int j = 0; j <= hi; j++) prev[j] = 0;
+        prev[hi + 1] = NONE;
 
         for (int i = 1; i <= m; i++) {
-            costs[0] = i;
-            int lastValue = i - 1;
-            for (int j = 1; j <= n; j++) {
-                int temp = costs[j];
-                // Cost for substitution is 0 if characters match, 1 otherwise
-                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                // Min(cost to substitute, cost to insert, cost to delete)
-                costs[j] = Math.min(costs[j], Math.min(costs[j - 1] + 1, lastValue + cost));
-                lastValue = temp;
+            int lo = Math.max(0, i - below);
+            hi = Math.min(n, i + above);
+            scratch.cells += hi - lo + 1;
+            if (lo > 0) cur[lo - 1] = NONE;
+            int reachable = NONE;
+            char c = a.charAt(aFrom + i - 1);
+            for (int j = lo; j <= hi; j++) {
+                int v;
+                if (j == 0) v = 0;
+                else if (c == b.charAt(bFrom + j - 1)) v = prev[j - 1] + 1;
+                else v = Math.max(prev[j], cur[j - 1]);
+                cur[j] = v;
+                reachable = Math.max(reachable, v + Math.min(m - i, n - j));
             }
+            if (hi < n) cur[hi + 1] = NONE;
+            if (reachable < minLcs) return Math.max(0, reachable);
+            int[] t = prev;
+            prev = cur;
+            cur = t;
         }
-        return costs[n];
+        return Math.max(0, prev[n]);
     }
+
     /**
      * Calculates the Content Similarity score (0.0 to 1.0) using normalized LD.
      * Formula: 1 - (Distance / Max Length)
@@ -39,15 +206,153 @@ public class SimilarityMetrics {
      * @return A similarity score between 0.0 and 1.0. 
      */
     public static double getContentSimilarity(String s1, String s2) {
-        if (s1.isEmpty() && s2.isEmpty()) return 1.0;
+        return getContentSimilarity(s1, s2, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Content similarity for callers that only care about scores of at least
+     * {@code minSimilarity}. Such scores are returned exactly as the two-argument
+     * version computes them; for lower scores the distance computation stops early and
+     * {@link Double#NEGATIVE_INFINITY} is returned.
+     */
+    public static double getContentSimilarity(CharSequence s1, CharSequence s2, double minSimilarity) {
         int maxLen = Math.max(s1.length(), s2.length());
         if (maxLen == 0) return 1.0; 
 
-        int distance = calculateLevenshteinDistance(s1, s2);
+        // One edit of slack, so rounding in the bound never drops a passing score
+        int maxDistance = minSimilarity <= 0.0 ? maxLen
+                : (int) Math.min(maxLen, Math.floor((1.0 - minSimilarity) * maxLen) + 1);
+        int distance = calculateLevenshteinDistance(s1, s2, maxDistance);
+        if (distance > maxDistance) return Double.NEGATIVE_INFINITY;
         
         // This score is high when distance is low (strings are similar)
-        return 1.0 - ((double) distance / maxLen);
+        double similarity = 1.0 - ((double) distance / maxLen);
+        return similarity >= minSimilarity ? similarity : Double.NEGATIVE_INFINITY;
     }
+    /**
+     * Content similarity of one fixed string against a text that grows at the end, as
+     * Step 5 needs when it appends lines to a candidate run. Each appended character
+     * advances a multi-word bit-parallel LCS state by one step, so the similarity after
+     * every append costs O(|s1| / 64) per new character instead of a full recomputation.
+     * {@link #similarity()} equals getContentSimilarity(s1, text) for the text so far.
+     * Not thread-safe; reuse one instance per thread.
+     */
+    public static final class ContentStream {
+        private long[] asciiPeq = new long[0];
+        private char[] otherChars = new char[8];
+        private long[][] otherPeq = new long[8][];
+        private int others;
+        private CharSequence pattern = "";
+        private int words;
+        private long lastMask;
+        private long[] v = new long[0];
+        private int textLength;
+        private long cells;
+
+        /** Sets the fixed string and clears the text. */
+        public void reset(CharSequence s1) {
+            // Clear the masks of the previous pattern
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c < 128) Arrays.fill(asciiPeq, c * words, (c + 1) * words, 0L);
+            }
+            others = 0;
+            pattern = s1;
+            int m = s1.length();
+            words = Math.max(1, (m + WORD - 1) / WORD);
+            lastMask = m % WORD == 0 ? -1L : (1L << (m % WORD)) - 1;
+            if (asciiPeq.length < 128 * words) asciiPeq = new long[128 * words];
+            if (v.length < words) v = new long[words];
+            for (int i = 0; i < m; i++) {
+                char c = s1.charAt(i);
+                if (c < 128) {
+                    asciiPeq[c * words + i / WORD] |= 1L << (i % WORD);
+                } else {
+                    otherMask(c)[i / WORD] |= 1L << (i % WORD);
+                }
+            }
+            clear();
+        }
+
+        /** Empties the text, keeping the fixed string. */
+        public void clear() {
+            Arrays.fill(v, 0, words, -1L);
+            textLength = 0;
+        }
+
+        public void append(char c) {
+            // The text's first character can only be matched by the fixed string's first
+            // (see calculateLevenshteinDistance), so a mismatching one is just counted
+            if (textLength++ == 0 && (pattern.length() == 0 || pattern.charAt(0) != c)) return;
+            cells += pattern.length();
+            long carry = 0;
+            for (int k = 0; k < words; k++) {
+                long eq = c < 128 ? asciiPeq[c * words + k] : otherEq(c, k);
+                long vk = v[k];
+                long u = vk & eq;
+                // (v + u) | (v - u); u is a subset of v, so v - u needs no borrow
+                long sum = vk + u;
+                long nextCarry = Long.compareUnsigned(sum, vk) < 0 ? 1 : 0;
+                sum += carry;
+                if (carry != 0 && sum == 0) nextCarry = 1;
+                carry = nextCarry;
+                v[k] = sum | (vk & ~u);
+            }
+        }
+
+        public void append(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) append(text.charAt(i));
+        }
+
+        public int textLength() {
+            return textLength;
+        }
+
+        /** DP cells covered by all appends since this instance was created. */
+        public long cells() {
+            return cells;
+        }
+
+        /** getContentSimilarity(s1, text) for the text appended so far. */
+        public double similarity() {
+            int m = pattern.length();
+            int maxLen = Math.max(m, textLength);
+            if (maxLen == 0) return 1.0;
+            int distance;
+            if (m == 0) {
+                distance = textLength;
+            } else if (textLength == 0) {
+                distance = m;
+            } else {
+                int lcs = 0;
+                for (int k = 0; k < words - 1; k++) lcs += Long.bitCount(~v[k]);
+                lcs += Long.bitCount(~v[words - 1] & lastMask);
+                distance = textLength - lcs;
+            }
+            return 1.0 - ((double) distance / maxLen);
+        }
+
+        private long otherEq(char c, int word) {
+            for (int k = 0; k < others; k++) {
+                if (otherChars[k] == c) return otherPeq[k][word];
+            }
+            return 0L;
+        }
+
+        private long[] otherMask(char c) {
+            for (int k = 0; k < others; k++) {
+                if (otherChars[k] == c) return otherPeq[k];
+            }
+            if (others == otherChars.length) {
+                otherChars = Arrays.copyOf(otherChars, others * 2);
+                otherPeq = Arrays.copyOf(otherPeq, others * 2);
+            }
+            otherChars[others] = c;
+            otherPeq[others] = new long[words];
+            return otherPeq[others++];
+        }
+    }
+
     // ----------------------------------------------------------------------
     // 2. Context Similarity: Cosine Similarity (Weight: 0.4)
     // ----------------------------------------------------------------------
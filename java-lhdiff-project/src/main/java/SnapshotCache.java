@@ -0,0 +1,208 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Optional on-disk cache of normalized lines and line SimHashes, addressed by content.
+ *
+ * Entries are keyed by the SHA-256 of the file bytes, the normalizer and SimHash
+ * versions and the context window size, so the same file revision is normalized and hashed only once no
+ * matter how many pairs it appears in. Each entry is a compact binary file that is
+ * memory-mapped on read:
+ *
+ *   int magic, int format, int lineCount, int windowSize
+ *   long[lineCount] content SimHash, long[lineCount] context SimHash
+ *   int[lineCount + 1] byte offsets, UTF-8 bytes of the normalized lines
+ *
+ * Total size is bounded: after a write, the least recently used entries are deleted
+ * until the directory is under the limit. Hits refresh an entry's modification time.
+ */
+public final class SnapshotCache {
+    private static final int MAGIC = 0x4C484443; // "LHDC"
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".lhc";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public SnapshotCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Loads {@code file} as a LineSnapshot whose SimHashes for {@code windowSize} are already
+     * populated, reading them from the cache when this content was seen before.
+     */
+    public LineSnapshot load(Path file, int windowSize) throws IOException {
+        return load(file, LineSnapshot.readBytes(file), windowSize);
+    }
+
+    /** Same for content that was already read; {@code file} may be null (e.g. a git blob). */
+    LineSnapshot load(Path file, ByteBuffer bytes, int windowSize) throws IOException {
+        List<String> rawLines = LineSnapshot.decodeLines(bytes);
+        Path entry = directory.resolve(key(bytes, windowSize) + SUFFIX);
+
+        if (Files.exists(entry)) {
+            LineSnapshot cached = read(entry, file, rawLines, windowSize);
+            if (cached != null) {
+                touch(entry);
+                return cached;
+            }
+        }
+
+        LineSnapshot snapshot = LineSnapshot.create(file, rawLines);
+        write(entry, snapshot.normalizedLines, snapshot.lineSimhashes(windowSize), windowSize);
+        evict();
+        return snapshot;
+    }
+
+    private static String key(ByteBuffer bytes, int windowSize) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        sha.update(bytes.duplicate());
+        StringBuilder sb = new StringBuilder();
+        for (byte b : sha.digest()) sb.append(String.format("%02x", b));
+        return sb.append("-n").append(JavaLineNormalizer.VERSION)
+                .append("-s").append(SimhashGenerator.VERSION).append("-w").append(windowSize).toString();
+    }
+
+    // Returns null when the entry is unreadable or does not match, so the caller recomputes it.
+    private static LineSnapshot read(Path entry, Path file, List<String> rawLines, int windowSize) {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT) return null;
+            int count = buf.getInt();
+            if (count != rawLines.size() || buf.getInt() != windowSize) return null;
+
+            long[] content = new long[count];
+            long[] context = new long[count];
+            buf.asLongBuffer().get(content);
+            buf.position(buf.position() + count * 8);
+            buf.asLongBuffer().get(context);
+            buf.position(buf.position() + count * 8);
+            int[] offsets = new int[count + 1];
+            buf.asIntBuffer().get(offsets);
+            buf.position(buf.position() + (count + 1) * 4);
+
+            byte[] text = new byte[offsets[count]];
+            buf.get(text);
+            List<String> normalized = new ArrayList<>(count);
+            SimhashGenerator.LineSimhash[] hashes = new SimhashGenerator.LineSimhash[count];
+            for (int i = 0; i < count; i++) {
+                normalized.add(new String(text, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+                hashes[i] = new SimhashGenerator.LineSimhash(i, content[i], context[i]);
+            }
+            return LineSnapshot.restore(file, rawLines, normalized, windowSize, hashes);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void write(Path entry, List<String> normalized, SimhashGenerator.LineSimhash[] hashes,
+                       int windowSize) throws IOException {
+        Path tmp = Files.createTempFile(directory, "entry", ".tmp");
+        boolean moved = false;
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                int count = normalized.size();
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(count);
+                out.writeInt(windowSize);
+                for (SimhashGenerator.LineSimhash h : hashes) out.writeLong(h.ContentSimhash);
+                for (SimhashGenerator.LineSimhash h : hashes) out.writeLong(h.ContextSimhash);
+                byte[][] text = new byte[count][];
+                int offset = 0;
+                out.writeInt(0);
+                for (int i = 0; i < count; i++) {
+                    text[i] = normalized.get(i).getBytes(StandardCharsets.UTF_8);
+                    offset += text[i].length;
+                    out.writeInt(offset);
+                }
+                for (byte[] t : text) out.write(t);
+            }
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            // evict() only counts entries, so a temporary file left here would never be reclaimed
+            if (!moved) Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects eviction order
+        }
+    }
+
+    // An entry's size and modification time, read once when the directory is listed
+    private static final class Entry {
+        final Path path;
+        final long size;
+        final FileTime lastModified;
+
+        Entry(Path path, long size, FileTime lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    // Deletes least recently used entries until the cache fits in maxBytes. Entries that
+    // another process deletes meanwhile are skipped. The order comes from the times read
+    // while listing, so a concurrent touch() cannot change it during the sort.
+    private void evict() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(p, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                entries.add(new Entry(p, attributes.size(), attributes.lastModifiedTime()));
+                total += attributes.size();
+            }
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparing((Entry e) -> e.lastModified));
+        for (Entry e : entries) {
+            if (total <= maxBytes) break;
+            if (Files.deleteIfExists(e.path)) total -= e.size;
+        }
+    }
+}
@@ -1,16 +1,21 @@
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.BitSet;
 
 public class Step2Result {
-    public List<int[]> anchors; // Pairs of [oldIndex, newIndex]
-    public Set<Integer> unmappedOld;
-    public Set<Integer> unmappedNew;
+    // Anchor pairs: old line anchorOld[k] matches new line anchorNew[k], in ascending order
+    public int[] anchorOld;
+    public int[] anchorNew;
+    public BitSet unmappedOld; // old lines that are not anchors
+    public BitSet unmappedNew; // new lines that are not anchors
+    public LineSymbols symbols; // interned normalized lines of both files
 
     public Step2Result(int oldSize, int newSize) {
-        this.anchors = new ArrayList<>();
-        this.unmappedOld = new HashSet<>();
-        this.unmappedNew = new HashSet<>();
+        this.anchorOld = new int[0];
+        this.anchorNew = new int[0];
+        this.unmappedOld = new BitSet(oldSize);
+        this.unmappedNew = new BitSet(newSize);
+    }
+
+    public int anchorCount() {
+        return anchorOld.length;
     }
 }
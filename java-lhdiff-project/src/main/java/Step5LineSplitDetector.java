@@ -1,69 +1,161 @@
 import java.util.*;
 
 public class Step5LineSplitDetector {
-    private static final double THRESHOLD = 0.5;
+    public static final double THRESHOLD = 0.5;
 
-    public Map<Integer, List<Integer>> detectSplits(
-            List<LinesMapping.SettingLineRecord> oldRecords,
-            List<LinesMapping.SettingLineRecord> newRecords,
-            Set<Integer> unmappedOld,
-            Set<Integer> unmappedNew) {
+    /** Old lines mapped to a run of consecutive new lines {@code start[i]..end[i]} (inclusive), or -1. */
+    public static final class Splits {
+        public final int[] start;
+        public final int[] end;
 
-        Map<Integer, List<Integer>> splitMatches = new HashMap<>();
-        List<Integer> sortedOldIndices = new ArrayList<>(unmappedOld);
-        Collections.sort(sortedOldIndices);
+        Splits(int oldSize) {
+            start = new int[oldSize];
+            end = new int[oldSize];
+            Arrays.fill(start, -1);
+            Arrays.fill(end, -1);
+        }
+
+        public boolean isSplit(int oldIdx) {
+            return start[oldIdx] >= 0;
+        }
+    }
+
+    // Start lines are searched this far beyond the old line's anchor gap
+    public static final int DEFAULT_WINDOW = 64;
+
+    private final int window;
+    private final double threshold;
+
+    public Step5LineSplitDetector() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public Step5LineSplitDetector(int window) {
+        this(window, THRESHOLD);
+    }
+
+    /** @param threshold lowest content similarity a split run is accepted with */
+    public Step5LineSplitDetector(int window, double threshold) {
+        this.window = window;
+        this.threshold = threshold;
+    }
 
-        for (int oldIdx : sortedOldIndices) {
-            String oldNorm = oldRecords.get(oldIdx).normalized;
+    /** Searches every unmapped new line as a start line. */
+    public Splits detectSplits(
+            LineSnapshot oldSnapshot,
+            LineSnapshot newSnapshot,
+            LineSymbols symbols,
+            BitSet unmappedOld,
+            BitSet unmappedNew) {
+        return detectSplits(oldSnapshot, newSnapshot, symbols, null, null, unmappedOld, unmappedNew);
+    }
+
+    /**
+     * For every unmapped old line, finds the run of consecutive unmapped new lines whose
+     * concatenation is most similar to it. Start lines are limited to the new-file gap
+     * between the anchors around the old line, widened by the window on both sides;
+     * with no anchors the whole file is searched. A run is extended one line at a time
+     * while the similarity improves, feeding only the appended characters into an
+     * incremental similarity state (SimilarityMetrics.ContentStream).
+     */
+    public Splits detectSplits(
+            LineSnapshot oldSnapshot,
+            LineSnapshot newSnapshot,
+            LineSymbols symbols,
+            int[] anchorOld,
+            int[] anchorNew,
+            BitSet unmappedOld,
+            BitSet unmappedNew) {
+        return detectSplits(oldSnapshot, newSnapshot, symbols, anchorOld, anchorNew, unmappedOld, unmappedNew, null);
+    }
+
+    /** Same, also counting start lines tried and DP cells into {@code metrics} unless it is null. */
+    public Splits detectSplits(
+            LineSnapshot oldSnapshot,
+            LineSnapshot newSnapshot,
+            LineSymbols symbols,
+            int[] anchorOld,
+            int[] anchorNew,
+            BitSet unmappedOld,
+            BitSet unmappedNew,
+            DiffMetrics metrics) {
+
+        List<String> oldNormalized = oldSnapshot.normalizedLines;
+        List<String> newNormalized = newSnapshot.normalizedLines;
+        int newSize = newNormalized.size();
+        Splits splits = new Splits(oldNormalized.size());
+        SimilarityMetrics.ContentStream content = new SimilarityMetrics.ContentStream();
+        long attempts = 0;
+
+        for (int oldIdx = unmappedOld.nextSetBit(0); oldIdx >= 0; oldIdx = unmappedOld.nextSetBit(oldIdx + 1)) {
             // Skip splitting for BLANK_TOKEN
-            if (oldNorm.isEmpty() || oldNorm.equals("BLANK_TOKEN")) continue;
+            if (symbols.oldIds[oldIdx] == LineSymbols.BLANK) continue;
+            String oldNorm = oldNormalized.get(oldIdx);
+            if (oldNorm.isEmpty()) continue;
+            content.reset(oldNorm);
 
-            double bestScore = -1.0;
-            List<Integer> bestSequence = null;
+            int first = 0;
+            int last = newSize - 1;
+            if (anchorOld != null && anchorOld.length > 0) {
+                int next = Arrays.binarySearch(anchorOld, oldIdx);
+                next = next >= 0 ? next + 1 : -next - 1;
+                int gapStart = next > 0 ? anchorNew[next - 1] + 1 : 0;
+                int gapEnd = next < anchorNew.length ? anchorNew[next] - 1 : newSize - 1;
+                first = Math.max(0, gapStart - window);
+                last = Math.min(newSize - 1, gapEnd + window);
+            }
 
-            List<Integer> sortedNewIndices = new ArrayList<>(unmappedNew);
-            Collections.sort(sortedNewIndices);
+            double bestScore = -1.0;
+            int bestStart = -1;
+            int bestEnd = -1;
 
-            for (int i = 0; i < sortedNewIndices.size(); i++) {
-                int startNewIdx = sortedNewIndices.get(i);
-                
-                StringBuilder combinedContent = new StringBuilder(newRecords.get(startNewIdx).normalized);
-                List<Integer> currentSequence = new ArrayList<>();
-                currentSequence.add(startNewIdx);
+            for (int startNewIdx = unmappedNew.nextSetBit(first); startNewIdx >= 0 && startNewIdx <= last;
+                    startNewIdx = unmappedNew.nextSetBit(startNewIdx + 1)) {
+                attempts++;
+                content.clear();
+                content.append(newNormalized.get(startNewIdx));
+                int endNewIdx = startNewIdx;
 
-                double currentSim = SimilarityMetrics.getContentSimilarity(oldNorm, combinedContent.toString());
-                int offset = 1;
+                double currentSim = content.similarity();
 
                 while (true) {
-                    int nextIdx = startNewIdx + offset;
-                    if (nextIdx >= newRecords.size() || !unmappedNew.contains(nextIdx)) break; 
+                    int nextIdx = endNewIdx + 1;
+                    if (nextIdx >= newSize || !unmappedNew.get(nextIdx)) break; 
 
-                    String nextLineContent = newRecords.get(nextIdx).normalized;
-                    String testCombinedContent = combinedContent.toString() + " " + nextLineContent;
-                    double nextSim = SimilarityMetrics.getContentSimilarity(oldNorm, testCombinedContent);
+                    // The run is the lines joined by single spaces
+                    content.append(' ');
+                    content.append(newNormalized.get(nextIdx));
+                    double nextSim = content.similarity();
 
+                    // Only an improvement extends the run; otherwise the appended text is dropped
                     if (nextSim > currentSim) {
                         currentSim = nextSim;
-                        combinedContent.append(" ").append(nextLineContent);
-                        currentSequence.add(nextIdx);
-                        offset++;
+                        endNewIdx = nextIdx;
                     } else {
                         break;
                     }
                 }
 
-                if (currentSim > bestScore && currentSim >= THRESHOLD) {
+                if (currentSim > bestScore && currentSim >= threshold) {
                     bestScore = currentSim;
-                    bestSequence = new ArrayList<>(currentSequence);
+                    bestStart = startNewIdx;
+                    bestEnd = endNewIdx;
                 }
             }
 
-            if (bestSequence != null && !bestSequence.isEmpty()) {
-                splitMatches.put(oldIdx, bestSequence);
-                for (int usedIdx : bestSequence) unmappedNew.remove(usedIdx);
+            if (bestStart >= 0) {
+                splits.start[oldIdx] = bestStart;
+                splits.end[oldIdx] = bestEnd;
+                unmappedNew.clear(bestStart, bestEnd + 1);
             }
         }
-        for (int oldIdx : splitMatches.keySet()) unmappedOld.remove(oldIdx);
-        return splitMatches;
+        for (int oldIdx = 0; oldIdx < splits.start.length; oldIdx++) {
+            if (splits.isSplit(oldIdx)) unmappedOld.clear(oldIdx);
+        }
+        if (metrics != null) {
+            metrics.splitAttempts += attempts;
+            metrics.splitCells += content.cells();
+        }
+        return splits;
     }
-}
\ No newline at end of file
+}
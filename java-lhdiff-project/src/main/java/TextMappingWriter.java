@@ -0,0 +1,45 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Writes one "old -> new" line per non-blank old line, 1-based: "-1" for deleted lines
+ * and "first-last" for splits. Non-blank new lines no old line maps to follow as
+ * "-1 -> new".
+ */
+public final class TextMappingWriter implements MappingWriter {
+
+    @Override
+    public void write(LineMapping mapping, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        String newline = System.lineSeparator();
+        for (int i = 0; i < mapping.oldSize(); i++) {
+            if (mapping.oldBlank.get(i)) continue;
+            writer.write(Integer.toString(i + 1));
+            writer.write(" -> ");
+            if (!mapping.isMapped(i)) {
+                writer.write("-1");
+            } else {
+                writer.write(Integer.toString(mapping.newStart[i] + 1));
+                if (mapping.isSplit(i)) {
+                    writer.write('-');
+                    writer.write(Integer.toString(mapping.newEnd[i] + 1));
+                }
+            }
+            writer.write(newline);
+        }
+
+        BitSet mapped = mapping.mappedNew();
+        for (int j = mapped.nextClearBit(0); j < mapping.newSize; j = mapped.nextClearBit(j + 1)) {
+            if (mapping.newBlank.get(j)) continue;
+            writer.write("-1 -> ");
+            writer.write(Integer.toString(j + 1));
+            writer.write(newline);
+        }
+        writer.flush();
+    }
+}
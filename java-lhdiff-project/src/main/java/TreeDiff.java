@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Diffs two source trees in one JVM.
+ *
+ * Files are paired by their path relative to the tree roots. Every pair runs on a
+ * work-stealing pool with one shared LHDiffEngine. Pairs with equal SHA-256 content
+ * hashes skip the pipeline and get the identity mapping. Files present on only one
+ * side are reported as added or deleted.
+ */
+public final class TreeDiff {
+
+    public enum Status { IDENTICAL, MODIFIED, ADDED, DELETED, FAILED }
+
+    /** One pair of files; {@code mapping} is null unless the status is IDENTICAL or MODIFIED. */
+    public static final class FileResult {
+        public final String path; // relative to both roots, '/' separated
+        public final Status status;
+        public final LineMapping mapping;
+        public final int lines;   // old plus new lines that were read
+        public final String error;
+
+        FileResult(String path, Status status, LineMapping mapping, int lines, String error) {
+            this.path = path;
+            this.status = status;
+            this.mapping = mapping;
+            this.lines = lines;
+            this.error = error;
+        }
+    }
+
+    /** All pairs in path order, with throughput totals. */
+    public static final class Result {
+        public final List<FileResult> files;
+        public final long elapsedNanos;
+
+        Result(List<FileResult> files, long elapsedNanos) {
+            this.files = Collections.unmodifiableList(files);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int count(Status status) {
+            int n = 0;
+            for (FileResult f : files) if (f.status == status) n++;
+            return n;
+        }
+
+        public long lines() {
+            long n = 0;
+            for (FileResult f : files) n += f.lines;
+            return n;
+        }
+
+        public double pairsPerSecond() {
+            return files.size() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public double linesPerSecond() {
+            return lines() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public String summary() {
+            return String.format("%d pairs (%d modified, %d identical, %d added, %d deleted, %d failed), "
+                            + "%d lines in %.1f ms: %.1f pairs/s, %.0f lines/s",
+                    files.size(), count(Status.MODIFIED), count(Status.IDENTICAL), count(Status.ADDED),
+                    count(Status.DELETED), count(Status.FAILED), lines(), elapsedNanos / 1e6,
+                    pairsPerSecond(), linesPerSecond());
+        }
+    }
+
+    private final LHDiffEngine engine;
+    private final String suffix;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param suffix only files whose name ends with this are diffed, e.g. ".java"
+     * @param pool pool the pairs are spread over; null for the common pool
+     */
+    public TreeDiff(LHDiffEngine engine, String suffix, ForkJoinPool pool) {
+        this.engine = engine;
+        this.suffix = suffix;
+        this.pool = pool;
+    }
+
+    public Result run(Path oldRoot, Path newRoot) throws IOException {
+        long start = System.nanoTime();
+        TreeSet<String> paths = new TreeSet<>(list(oldRoot));
+        paths.addAll(list(newRoot));
+        List<String> ordered = new ArrayList<>(paths);
+
+        List<FileResult> files = diffAll(ordered, path -> diffPair(oldRoot, newRoot, path), pool);
+        return new Result(files, System.nanoTime() - start);
+    }
+
+    /** Runs {@code diff} on every item on {@code pool} (null for the common pool); results keep the item order. */
+    static <T> List<FileResult> diffAll(List<T> items, Function<T, FileResult> diff, ForkJoinPool pool) {
+        FileResult[] files = new FileResult[items.size()];
+        (pool != null ? pool : ForkJoinPool.commonPool()).invoke(new PairTask<>(items, 0, items.size(), diff, files));
+        return Arrays.asList(files);
+    }
+
+    // Diffs items[from, to) into files[from, to); pairs are independent, so each task writes only its own slots
+    private static final class PairTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> items;
+        private final int from;
+        private final int to;
+        private final Function<T, FileResult> diff;
+        private final FileResult[] files;
+
+        PairTask(List<T> items, int from, int to, Function<T, FileResult> diff, FileResult[] files) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.diff = diff;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PairTask<>(items, from, mid, diff, files), new PairTask<>(items, mid, to, diff, files));
+            } else if (from < to) {
+                files[from] = diff.apply(items.get(from));
+            }
+        }
+    }
+
+    private FileResult diffPair(Path oldRoot, Path newRoot, String path) {
+        Path oldFile = oldRoot.resolve(path);
+        Path newFile = newRoot.resolve(path);
+        try {
+            if (!Files.isRegularFile(newFile)) {
+                return new FileResult(path, Status.DELETED, null, 0, null);
+            }
+            if (!Files.isRegularFile(oldFile)) {
+                return new FileResult(path, Status.ADDED, null, 0, null);
+            }
+            ByteBuffer oldBytes = LineSnapshot.readBytes(oldFile);
+            ByteBuffer newBytes = LineSnapshot.readBytes(newFile);
+            if (oldBytes.remaining() == newBytes.remaining()
+                    && MessageDigest.isEqual(sha256(oldBytes), sha256(newBytes))) {
+                List<String> oldLines = LineSnapshot.decodeLines(oldBytes);
+                return new FileResult(path, Status.IDENTICAL, LineMapping.identity(oldLines), 2 * oldLines.size(), null);
+            }
+            LineSnapshot oldSnapshot = engine.snapshot(oldFile, oldBytes);
+            LineSnapshot newSnapshot = engine.snapshot(newFile, newBytes);
+            LineMapping mapping = engine.diff(oldSnapshot, newSnapshot);
+            return new FileResult(path, Status.MODIFIED, mapping, oldSnapshot.size() + newSnapshot.size(), null);
+        } catch (IOException | RuntimeException e) {
+            // One unreadable pair must not abort the whole tree
+            return new FileResult(path, Status.FAILED, null, 0, e.toString());
+        }
+    }
+
+    private List<String> list(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .map(p -> root.relativize(p).toString().replace(root.getFileSystem().getSeparator(), "/"))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static byte[] sha256(ByteBuffer bytes) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(bytes.duplicate());
+            return sha.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds old/new Java file pairs of any size with a known, exact line mapping.
+ *
+ * The old file is made of seed sources repeated up to the requested size (class names
+ * get a per-copy suffix). The new file applies controlled mutations to it: line edits,
+ * deletions, insertions, splits of one line into two, comment churn, renames of called
+ * methods (which normalize to the same "func_id(" and so test Step 1), and moves of
+ * whole blocks. Every new line remembers which old line it came from, so the ground
+ * truth is exact by construction. It is written in the dataset XML format; as with
+ * XmlMappingWriter, a split old line gets one LOCATION per new line.
+ */
+public final class WorkloadGenerator {
+    private static final Pattern IDENTIFIER = Pattern.compile("\\b[a-zA-Z_][a-zA-Z0-9_]*\\b");
+    private static final Pattern CALL = Pattern.compile("\\b([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern CLASS_NAME = Pattern.compile("\\b(class|interface|enum)\\s+([A-Za-z_][A-Za-z0-9_]*)");
+    private static final List<String> KEYWORDS = Arrays.asList("abstract", "boolean", "break", "case", "catch",
+            "char", "class", "continue", "default", "do", "double", "else", "enum", "extends", "final", "for",
+            "if", "implements", "import", "int", "interface", "long", "new", "null", "package", "private",
+            "protected", "public", "return", "static", "super", "switch", "this", "throw", "throws", "try",
+            "void", "while", "true", "false");
+    private static final String[] WORDS = { "count", "total", "index", "result", "buffer", "value", "offset",
+            "limit", "entry", "node", "size", "token", "state", "next", "handler", "cursor" };
+
+    /** Per-line probabilities of each mutation, and block moves per 1000 lines. */
+    public static final class Rates {
+        public double edit = 0.05;
+        public double delete = 0.02;
+        public double insert = 0.02;
+        public double split = 0.01;
+        public double commentChurn = 0.02;
+        public double rename = 0.02;
+        public double movesPerThousandLines = 0.5;
+        public int maxMoveLines = 15;
+
+        /** No mutations: the new file equals the old one. */
+        public static Rates none() {
+            Rates rates = new Rates();
+            rates.edit = rates.delete = rates.insert = rates.split = rates.commentChurn = rates.rename = 0;
+            rates.movesPerThousandLines = 0;
+            return rates;
+        }
+    }
+
+    /** One generated pair with its ground truth, 0-based like LineMapping. */
+    public static final class Workload {
+        public final List<String> oldLines;
+        public final List<String> newLines;
+        public final LineMapping truth;
+
+        Workload(List<String> oldLines, List<String> newLines, LineMapping truth) {
+            this.oldLines = oldLines;
+            this.newLines = newLines;
+            this.truth = truth;
+        }
+
+        /** Writes {@code <name>_Old.java}, {@code <name>_New.java} and {@code <name>.xml} like the datasets. */
+        public void write(Path directory, String name) throws IOException {
+            Files.createDirectories(directory);
+            Files.write(directory.resolve(name + "_Old.java"), oldLines, StandardCharsets.UTF_8);
+            Files.write(directory.resolve(name + "_New.java"), newLines, StandardCharsets.UTF_8);
+            try (OutputStream out = new FileOutputStream(directory.resolve(name + ".xml").toFile())) {
+                new XmlMappingWriter(name.toUpperCase(), name + ".java").write(truth, out);
+            }
+        }
+    }
+
+    // A line of the new file and the old line it came from (-1 when inserted); a split is one
+    // Piece with two texts, so block moves never separate its parts
+    private static final class Piece {
+        final int origin;
+        final String[] texts;
+
+        Piece(int origin, String... texts) {
+            this.origin = origin;
+            this.texts = texts;
+        }
+    }
+
+    private final List<List<String>> seeds;
+    private final Rates rates;
+
+    public WorkloadGenerator(List<List<String>> seeds, Rates rates) {
+        if (seeds.isEmpty()) throw new IllegalArgumentException("no seed sources");
+        // oldFile() grows the old file one seed at a time and would never finish
+        for (List<String> seed : seeds) {
+            if (seed.isEmpty()) throw new IllegalArgumentException("empty seed source");
+        }
+        this.seeds = seeds;
+        this.rates = rates;
+    }
+
+    /** A pair whose old file has exactly {@code oldSize} lines; the same seed gives the same pair. */
+    public Workload generate(int oldSize, long seed) {
+        Random random = new Random(seed);
+        List<String> oldLines = oldFile(oldSize);
+
+        List<Piece> pieces = new ArrayList<>(oldSize + oldSize / 8);
+        for (int i = 0; i < oldSize; i++) {
+            String line = oldLines.get(i);
+            if (line.trim().isEmpty()) {
+                pieces.add(new Piece(i, line));
+                continue;
+            }
+            double roll = random.nextDouble();
+            if ((roll -= rates.delete) < 0) {
+                continue;
+            } else if ((roll -= rates.edit) < 0) {
+                pieces.add(new Piece(i, edit(line, random)));
+            } else if ((roll -= rates.rename) < 0) {
+                pieces.add(new Piece(i, rename(line, random)));
+            } else if ((roll -= rates.commentChurn) < 0) {
+                if (random.nextBoolean()) {
+                    pieces.add(new Piece(i, churnComment(line, random)));
+                } else {
+                    pieces.add(new Piece(-1, indent(line) + "// " + word(random) + " " + word(random)));
+                    pieces.add(new Piece(i, line));
+                }
+            } else if ((roll -= rates.split) < 0) {
+                int cut = splitPoint(line);
+                if (cut < 0) {
+                    pieces.add(new Piece(i, line));
+                } else {
+                    pieces.add(new Piece(i, line.substring(0, cut), indent(line) + "        " + line.substring(cut + 1).trim()));
+                }
+            } else {
+                pieces.add(new Piece(i, line));
+            }
+            if (random.nextDouble() < rates.insert) {
+                pieces.add(new Piece(-1, indent(line) + statement(random)));
+            }
+        }
+
+        int moves = (int) Math.round(oldSize * rates.movesPerThousandLines / 1000.0);
+        for (int m = 0; m < moves && pieces.size() > 2; m++) {
+            int length = 1 + random.nextInt(Math.min(rates.maxMoveLines, pieces.size() - 1));
+            int from = random.nextInt(pieces.size() - length + 1);
+            List<Piece> block = new ArrayList<>(pieces.subList(from, from + length));
+            pieces.subList(from, from + length).clear();
+            pieces.addAll(random.nextInt(pieces.size() + 1), block);
+        }
+
+        List<String> newLines = new ArrayList<>(pieces.size() + 16);
+        int[] start = new int[oldSize];
+        int[] end = new int[oldSize];
+        Arrays.fill(start, -1);
+        Arrays.fill(end, -1);
+        for (Piece piece : pieces) {
+            if (piece.origin >= 0) {
+                start[piece.origin] = newLines.size();
+                end[piece.origin] = newLines.size() + piece.texts.length - 1;
+            }
+            newLines.addAll(Arrays.asList(piece.texts));
+        }
+        LineMapping truth = new LineMapping(start, end, newLines.size(), blankLines(oldLines), blankLines(newLines));
+        return new Workload(oldLines, newLines, truth);
+    }
+
+    // Seeds in turn until the size is reached; later copies get renamed types
+    private List<String> oldFile(int size) {
+        List<String> lines = new ArrayList<>(size);
+        for (int copy = 0; lines.size() < size; copy++) {
+            for (String line : seeds.get(copy % seeds.size())) {
+                if (lines.size() == size) break;
+                if (copy >= seeds.size()) {
+                    Matcher m = CLASS_NAME.matcher(line);
+                    if (m.find()) line = line.substring(0, m.end()) + "_" + copy + line.substring(m.end());
+                }
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String edit(String line, Random random) {
+        List<int[]> spans = spans(NUMBER, line);
+        if (!spans.isEmpty() && random.nextBoolean()) {
+            int[] s = spans.get(random.nextInt(spans.size()));
+            return line.substring(0, s[0]) + (random.nextInt(1000)) + line.substring(s[1]);
+        }
+        spans = identifiers(line);
+        if (spans.isEmpty()) return line + " // " + word(random);
+        int[] s = spans.get(random.nextInt(spans.size()));
+        String replacement = random.nextBoolean() ? word(random) : line.substring(s[0], s[1]) + word(random).substring(0, 1).toUpperCase();
+        return line.substring(0, s[0]) + replacement + line.substring(s[1]);
+    }
+
+    // Renames a called method, so the line still normalizes to the same text (func_id);
+    // lines without a call stay as they are
+    private static String rename(String line, Random random) {
+        List<int[]> calls = new ArrayList<>();
+        Matcher m = CALL.matcher(line);
+        while (m.find()) {
+            if (!KEYWORDS.contains(m.group(1))) calls.add(new int[] { m.start(1), m.end(1) });
+        }
+        if (calls.isEmpty()) return line;
+        int[] s = calls.get(random.nextInt(calls.size()));
+        return line.substring(0, s[0]) + word(random) + "With" + word(random).substring(0, 1).toUpperCase()
+                + line.substring(s[1]);
+    }
+
+    private static String churnComment(String line, Random random) {
+        int comment = line.indexOf("//");
+        if (comment >= 0) return line.substring(0, comment) + "// " + word(random) + " " + word(random);
+        return line + " // " + word(random);
+    }
+
+    // A space near the middle, outside string literals and comments; -1 when there is none
+    private static int splitPoint(String line) {
+        int limit = line.indexOf("//");
+        if (limit < 0) limit = line.length();
+        int body = line.length() - line.replaceAll("^\\s+", "").length();
+        int best = -1;
+        boolean inString = false;
+        for (int k = body; k < limit; k++) {
+            char c = line.charAt(k);
+            if (c == '"' && (k == 0 || line.charAt(k - 1) != '\\')) inString = !inString;
+            if (c == ' ' && !inString && k > body + 3 && k < limit - 3) {
+                if (best < 0 || Math.abs(k - (body + limit) / 2) < Math.abs(best - (body + limit) / 2)) best = k;
+            }
+        }
+        return best;
+    }
+
+    private static List<int[]> identifiers(String line) {
+        List<int[]> spans = new ArrayList<>();
+        int limit = line.indexOf("//");
+        for (int[] s : spans(IDENTIFIER, line)) {
+            if (limit >= 0 && s[0] >= limit) break;
+            if (!KEYWORDS.contains(line.substring(s[0], s[1]))) spans.add(s);
+        }
+        return spans;
+    }
+
+    private static List<int[]> spans(Pattern pattern, String line) {
+        List<int[]> spans = new ArrayList<>();
+        Matcher m = pattern.matcher(line);
+        while (m.find()) spans.add(new int[] { m.start(), m.end() });
+        return spans;
+    }
+
+    private static String statement(Random random) {
+        String a = word(random);
+        String b = word(random);
+        switch (random.nextInt(4)) {
+            case 0:
+                return "int " + a + " = " + b + " + " + random.nextInt(100) + ";";
+            case 1:
+                return a + " = " + b + "." + word(random) + "();";
+            case 2:
+                return "if (" + a + " == null) return;";
+            default:
+                return "log(\"" + a + " \" + " + b + ");";
+        }
+    }
+
+    private static String indent(String line) {
+        int k = 0;
+        while (k < line.length() && Character.isWhitespace(line.charAt(k))) k++;
+        return line.substring(0, k);
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static BitSet blankLines(List<String> lines) {
+        BitSet blank = new BitSet(lines.size());
+        for (int i = 0; i < lines.size(); i++) if (lines.get(i).trim().isEmpty()) blank.set(i);
+        return blank;
+    }
+
+    /**
+     * Usage: WorkloadGenerator [--lines N] [--pairs P] [--seed S] --out dir seed.java...
+     * Writes File01_Old.java, File01_New.java, File01.xml, ... into the output directory.
+     */
+    public static void main(String[] args) throws IOException {
+        int lines = 10_000;
+        int pairs = 1;
+        long seed = 1;
+        Path out = null;
+        List<List<String>> seeds = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--lines") && i + 1 < args.length) {
+                lines = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--pairs") && i + 1 < args.length) {
+                pairs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                out = Paths.get(args[++i]);
+            } else {
+                seeds.add(LineSnapshot.load(Paths.get(args[i])).rawLines);
+            }
+        }
+        if (out == null || seeds.isEmpty()) {
+            System.out.println("Usage: java WorkloadGenerator [--lines N] [--pairs P] [--seed S] --out <dir> <Seed.java>...");
+            return;
+        }
+        WorkloadGenerator generator = new WorkloadGenerator(seeds, new Rates());
+        for (int p = 1; p <= pairs; p++) {
+            generator.generate(lines, seed + p).write(out, String.format("File%02d", p));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Writes the mapping in the format of the dataset XML files: one
+ * {@code <LOCATION ORIG="o" NEW="n" />} per non-blank old line, 1-based, with -1 for
+ * deleted lines, followed by {@code ORIG="-1"} entries for added lines. A split old
+ * line gets one LOCATION per new line of its run.
+ */
+public final class XmlMappingWriter implements MappingWriter {
+    private final String testName;
+    private final String fileName;
+
+    public XmlMappingWriter() {
+        this("LHDIFF", null);
+    }
+
+    /** @param fileName value of the FILE attribute; null to leave it out */
+    public XmlMappingWriter(String testName, String fileName) {
+        this.testName = testName;
+        this.fileName = fileName;
+    }
+
+    @Override
+    public void write(LineMapping mapping, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        String newline = System.lineSeparator();
+        writer.write("<TEST NAME=\"" + escape(testName) + "\"");
+        if (fileName != null) writer.write(" FILE=\"" + escape(fileName) + "\"");
+        writer.write(">" + newline);
+        writer.write(" <VERSION NUMBER=\"1\">" + newline);
+        for (int i = 0; i < mapping.oldSize(); i++) {
+            if (mapping.oldBlank.get(i)) continue;
+            if (!mapping.isMapped(i)) {
+                location(writer, i + 1, -1, newline);
+                continue;
+            }
+            for (int j = mapping.newStart[i]; j <= mapping.newEnd[i]; j++) location(writer, i + 1, j + 1, newline);
+        }
+        BitSet mapped = mapping.mappedNew();
+        for (int j = mapped.nextClearBit(0); j < mapping.newSize; j = mapped.nextClearBit(j + 1)) {
+            if (!mapping.newBlank.get(j)) location(writer, -1, j + 1, newline);
+        }
+        writer.write(" </VERSION>" + newline);
+        writer.write("</TEST>" + newline);
+        writer.flush();
+    }
+
+    private static void location(Writer writer, int orig, int nu, String newline) throws IOException {
+        writer.write("   <LOCATION ORIG=\"");
+        writer.write(Integer.toString(orig));
+        writer.write("\" NEW=\"");
+        writer.write(Integer.toString(nu));
+        writer.write("\" />");
+        writer.write(newline);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
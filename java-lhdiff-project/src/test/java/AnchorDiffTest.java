@@ -0,0 +1,110 @@
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnchorDiffTest {
+
+    @Test
+    void myersMatchesJavaDiffUtils() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            int[] a = randomIds(random, random.nextInt(40), 1 + random.nextInt(6));
+            int[] b = randomIds(random, random.nextInt(40), 1 + random.nextInt(6));
+            assertArrayEquals(diffUtilsMatch(a, b), new IntMyersDiff().match(a, b), "round " + round);
+        }
+    }
+
+    @Test
+    void myersMatchesJavaDiffUtilsOnDatasetPairs() throws Exception {
+        List<Path> olds;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            olds = walk.filter(p -> p.toString().endsWith("_Old.java")).sorted().collect(Collectors.toList());
+        }
+        assertFalse(olds.isEmpty());
+        for (Path old : olds) {
+            Path revised = old.resolveSibling(old.getFileName().toString().replace("_Old.java", "_New.java"));
+            List<String> a = JavaLineNormalizer.normalizeAll(Files.readAllLines(old));
+            List<String> b = JavaLineNormalizer.normalizeAll(Files.readAllLines(revised));
+            LineSymbols symbols = new LineSymbols(a, b);
+            assertArrayEquals(diffUtilsMatch(a, b), new IntMyersDiff().match(symbols.oldIds, symbols.newIds), old.toString());
+        }
+    }
+
+    @Test
+    void everyEngineReturnsACommonSubsequence() {
+        Random random = new Random(11);
+        for (int round = 0; round < 2000; round++) {
+            int[] a = randomIds(random, random.nextInt(60), 1 + random.nextInt(8));
+            int[] b = randomIds(random, random.nextInt(60), 1 + random.nextInt(8));
+            int lcs = matchedCount(new IntMyersDiff().match(a, b));
+            for (String name : AnchorDiff.NAMES) {
+                int[] match = AnchorDiff.named(name).match(a, b);
+                assertValidMatch(a, b, match, name);
+                if (!name.equals("histogram")) {
+                    // Both Myers variants find a longest common subsequence
+                    assertEquals(lcs, matchedCount(match), name + " round " + round);
+                }
+            }
+        }
+    }
+
+    private static int[] randomIds(Random random, int length, int alphabet) {
+        int[] ids = new int[length];
+        for (int i = 0; i < length; i++) ids[i] = random.nextInt(alphabet);
+        return ids;
+    }
+
+    private static int[] diffUtilsMatch(int[] a, int[] b) {
+        List<String> as = new ArrayList<>();
+        List<String> bs = new ArrayList<>();
+        for (int id : a) as.add(Integer.toString(id));
+        for (int id : b) bs.add(Integer.toString(id));
+        return diffUtilsMatch(as, bs);
+    }
+
+    private static int[] diffUtilsMatch(List<String> as, List<String> bs) {
+        int[] match = new int[as.size()];
+        Arrays.fill(match, -1);
+        int oldIndex = 0;
+        int newIndex = 0;
+        for (AbstractDelta<String> delta : DiffUtils.diff(as, bs).getDeltas()) {
+            for (; oldIndex < delta.getSource().getPosition(); oldIndex++, newIndex++) match[oldIndex] = newIndex;
+            oldIndex = delta.getSource().getPosition() + delta.getSource().size();
+            newIndex = delta.getTarget().getPosition() + delta.getTarget().size();
+        }
+        for (; oldIndex < as.size() && newIndex < bs.size(); oldIndex++, newIndex++) match[oldIndex] = newIndex;
+        return match;
+    }
+
+    private static void assertValidMatch(int[] a, int[] b, int[] match, String name) {
+        assertEquals(a.length, match.length, name);
+        int last = -1;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] < 0) continue;
+            assertTrue(match[i] > last && match[i] < b.length, name + ": pairs must increase");
+            assertEquals(a[i], b[match[i]], name + ": matched lines must be equal");
+            last = match[i];
+        }
+    }
+
+    private static int matchedCount(int[] match) {
+        int count = 0;
+        for (int m : match) if (m >= 0) count++;
+        return count;
+    }
+}
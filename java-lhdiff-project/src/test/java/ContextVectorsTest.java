@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ContextVectorsTest {
+
+    @Test
+    void cosineMatchesStringSimilarityOnDatasets() throws Exception {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            files = walk.filter(p -> p.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+        for (int f = 0; f + 1 < files.size(); f += 2) {
+            assertSameSimilarities(Files.readAllLines(files.get(f)), Files.readAllLines(files.get(f + 1)), 4);
+        }
+    }
+
+    @Test
+    void cosineMatchesStringSimilarityOnRandomLines() {
+        // Control characters that trim() strips but split() keeps
+        String alphabet = "ab \t\u0001\u001f;x";
+        Random random = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            assertSameSimilarities(randomLines(random, alphabet), randomLines(random, alphabet), random.nextInt(5));
+        }
+    }
+
+    private static void assertSameSimilarities(List<String> oldLines, List<String> newLines, int window) {
+        ContextVectors.Tokens tokens = new ContextVectors.Tokens();
+        ContextVectors oldVectors = ContextVectors.build(oldLines, window, tokens);
+        ContextVectors newVectors = ContextVectors.build(newLines, window, tokens);
+        for (int i = 0; i < oldLines.size(); i++) {
+            String oldContext = ContextVectors.joinedContext(oldLines, i, window);
+            for (int j = 0; j < newLines.size(); j++) {
+                String newContext = ContextVectors.joinedContext(newLines, j, window);
+                assertEquals(SimilarityMetrics.getContextSimilarity(newContext, oldContext),
+                        ContextVectors.cosine(newVectors, j, oldVectors, i), "old " + i + ", new " + j);
+            }
+        }
+    }
+
+    private static List<String> randomLines(Random random, String alphabet) {
+        List<String> lines = new ArrayList<>();
+        int n = random.nextInt(12);
+        for (int i = 0; i < n; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(10);
+            for (int c = 0; c < len; c++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DiffDaemonTest {
+
+    @Test
+    void answersPipelinedRequestsInOrder() throws Exception {
+        LHDiffEngine engine = new LHDiffEngine();
+        Path old1 = Paths.get("./datasets/Aakanksha/File01_Old.java");
+        Path new1 = Paths.get("./datasets/Aakanksha/File01_New.java");
+        Path old2 = Paths.get("./datasets/Aakanksha/File02_Old.java");
+        Path new2 = Paths.get("./datasets/Aakanksha/File02_New.java");
+        byte[] oldBytes = Files.readAllBytes(old2);
+        byte[] newBytes = Files.readAllBytes(new2);
+
+        try (DiffDaemon daemon = new DiffDaemon(engine, new TextMappingWriter(), 0, 4)) {
+            Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.port())) {
+                OutputStream out = socket.getOutputStream();
+                // All requests go out before any response is read
+                ByteArrayOutputStream requests = new ByteArrayOutputStream();
+                requests.write(("PATHS\t" + old1 + "\t" + new1 + "\n").getBytes(StandardCharsets.UTF_8));
+                requests.write(("TEXT\t" + oldBytes.length + "\t" + newBytes.length + "\n").getBytes(StandardCharsets.UTF_8));
+                requests.write(oldBytes);
+                requests.write(newBytes);
+                requests.write("PATHS\t/no/such/file.java\tx.java\n".getBytes(StandardCharsets.UTF_8));
+                requests.write(("PATHS\t" + old1 + "\t" + new1 + "\n").getBytes(StandardCharsets.UTF_8));
+                requests.write("QUIT\n".getBytes(StandardCharsets.UTF_8));
+                out.write(requests.toByteArray());
+                out.flush();
+
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                String first = text(engine.diff(old1, new1));
+                assertEquals(first, readResponse(in));
+                assertEquals(text(engine.diff(old2, new2)), readResponse(in));
+                String error = readLine(in);
+                assertTrue(error.startsWith("ERR "), error);
+                assertEquals(first, readResponse(in));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    private static String readResponse(InputStream in) throws Exception {
+        String header = readLine(in);
+        assertTrue(header.startsWith("OK "), header);
+        byte[] body = new byte[Integer.parseInt(header.substring(3))];
+        for (int read = 0; read < body.length; ) read += in.read(body, read, body.length - read);
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream in) throws Exception {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) line.write(b);
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String text(LineMapping mapping) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextMappingWriter().write(mapping, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
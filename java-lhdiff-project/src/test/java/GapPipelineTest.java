@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GapPipelineTest {
+
+    @Test
+    void gapResultsDoNotDependOnThreadCount() throws Exception {
+        List<Path> oldFiles;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            oldFiles = walk.filter(p -> p.getFileName().toString().toLowerCase().endsWith("_old.java"))
+                    .sorted().collect(Collectors.toList());
+        }
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool three = new ForkJoinPool(3);
+        try {
+            for (Path oldFile : oldFiles) {
+                String name = oldFile.getFileName().toString();
+                Path newFile = oldFile.resolveSibling(name.replace("_Old", "_New").replace("_old", "_new"));
+                LineSnapshot oldSnapshot = LineSnapshot.load(oldFile);
+                LineSnapshot newSnapshot = LineSnapshot.load(newFile);
+                for (boolean crossGap : new boolean[] { false, true }) {
+                    GapPipeline.Result sequential = run(oldSnapshot, newSnapshot, crossGap, one);
+                    GapPipeline.Result parallel = run(oldSnapshot, newSnapshot, crossGap, three);
+                    assertArrayEquals(sequential.step4Matches, parallel.step4Matches, name);
+                    assertArrayEquals(sequential.splits.start, parallel.splits.start, name);
+                    assertArrayEquals(sequential.splits.end, parallel.splits.end, name);
+                }
+            }
+        } finally {
+            one.shutdown();
+            three.shutdown();
+        }
+    }
+
+    private static GapPipeline.Result run(LineSnapshot oldSnapshot, LineSnapshot newSnapshot,
+                                          boolean crossGap, ForkJoinPool pool) {
+        Step2Result step2 = new LinesMapping().run(oldSnapshot, newSnapshot);
+        BitSet unmappedOld = (BitSet) step2.unmappedOld.clone();
+        BitSet unmappedNew = (BitSet) step2.unmappedNew.clone();
+        GapPipeline.Result result = new GapPipeline(4, 15, new MappingResolver(), new Step5LineSplitDetector(),
+                crossGap, pool).run(oldSnapshot, newSnapshot, step2);
+
+        // Every match and split uses lines Step 2 left open, each at most once
+        BitSet used = new BitSet(newSnapshot.size());
+        for (int i = 0; i < oldSnapshot.size(); i++) {
+            if (result.step4Matches[i] >= 0) {
+                assertTrue(unmappedOld.get(i) && unmappedNew.get(result.step4Matches[i]));
+                assertFalse(used.get(result.step4Matches[i]), "new line matched twice");
+                used.set(result.step4Matches[i]);
+                assertFalse(result.splits.isSplit(i));
+            } else if (result.splits.isSplit(i)) {
+                assertTrue(unmappedOld.get(i));
+                for (int j = result.splits.start[i]; j <= result.splits.end[i]; j++) {
+                    assertTrue(unmappedNew.get(j) && !used.get(j));
+                    used.set(j);
+                }
+            }
+        }
+        return result;
+    }
+}
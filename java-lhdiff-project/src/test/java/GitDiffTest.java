@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GitDiffTest {
+
+    @TempDir
+    Path repo;
+
+    @Test
+    void diffsModifiedFilesFromTheObjectStore() throws Exception {
+        Path dataset = Paths.get("./datasets/Aakanksha");
+        git("init", "-q");
+        Files.createDirectories(repo.resolve("src"));
+        copy(dataset.resolve("File01_Old.java"), "src/A.java");
+        copy(dataset.resolve("File02_Old.java"), "B.java");
+        copy(dataset.resolve("File03_Old.java"), "Unchanged.java");
+        Files.write(repo.resolve("notes.txt"), "one".getBytes(StandardCharsets.UTF_8));
+        git("add", "-A");
+        git("commit", "-q", "-m", "first");
+        copy(dataset.resolve("File01_New.java"), "src/A.java");
+        copy(dataset.resolve("File02_New.java"), "B.java");
+        Files.write(repo.resolve("notes.txt"), "two".getBytes(StandardCharsets.UTF_8));
+        git("add", "-A");
+        git("commit", "-q", "-m", "second");
+
+        LHDiffEngine engine = new LHDiffEngine();
+        TreeDiff.Result commit = new GitDiff(engine, repo, ".java", null).run("HEAD");
+        TreeDiff.Result range = new GitDiff(engine, repo, ".java", null).run("HEAD~1..HEAD");
+        assertEquals(2, commit.files.size());
+        assertEquals("B.java", commit.files.get(0).path);
+        assertEquals("src/A.java", commit.files.get(1).path);
+        assertArrayEquals(engine.diff(dataset.resolve("File02_Old.java"), dataset.resolve("File02_New.java")).newStart,
+                commit.files.get(0).mapping.newStart);
+        assertArrayEquals(engine.diff(dataset.resolve("File01_Old.java"), dataset.resolve("File01_New.java")).newStart,
+                commit.files.get(1).mapping.newStart);
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(commit.files.get(i).mapping.newEnd, range.files.get(i).mapping.newEnd);
+        }
+
+        try (GitBlobSource blobs = new GitBlobSource(repo)) {
+            assertArrayEquals(Files.readAllBytes(dataset.resolve("File01_Old.java")), blobs.read("HEAD~1:src/A.java"));
+            assertThrows(IOException.class, () -> blobs.read("HEAD:missing.java"));
+            // The process is still usable after a failed lookup
+            assertEquals("two", new String(blobs.read("HEAD:notes.txt"), StandardCharsets.UTF_8));
+            // and after a name that resolves to a tree, whose content must not be left in the stream
+            assertThrows(IOException.class, () -> blobs.read("HEAD:src"));
+            assertThrows(IOException.class, () -> blobs.read("HEAD"));
+            assertArrayEquals(Files.readAllBytes(dataset.resolve("File01_New.java")), blobs.read("HEAD:src/A.java"));
+        }
+    }
+
+    private void copy(Path from, String to) throws Exception {
+        Files.copy(from, repo.resolve(to), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void git(String... args) throws Exception {
+        String[] command = new String[args.length + 5];
+        command[0] = "git";
+        command[1] = "-c";
+        command[2] = "user.name=test";
+        command[3] = "-c";
+        command[4] = "user.email=test@example.com";
+        System.arraycopy(args, 0, command, 5, args.length);
+        Process process = new ProcessBuilder(command).directory(repo.toFile()).redirectErrorStream(true).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = process.getInputStream().read(buffer)) > 0; ) out.write(buffer, 0, n);
+        assertEquals(0, process.waitFor(), out.toString("UTF-8"));
+    }
+}
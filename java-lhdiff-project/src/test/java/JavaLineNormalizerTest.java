@@ -0,0 +1,181 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JavaLineNormalizerTest {
+
+    private static final String[] TRICKY_LINES = {
+            "", "   ", "\t", ";", ";;  ;", "int x = 1;", "  foo(bar);", "foo (a, b)", "Foo.Bar( x )",
+            "1abc(", "_x(", "a;b(c)", "x = y   (z)", "if (a) { b(); }", "String s = \"call Foo(x); // not a comment\";",
+            "char c = '\\'';", "char q = '\"'; run()", "\"unterminated", "/* start", "still comment", "end */ tail(x)",
+            "a /* inline */ b", "String t = \"\"\"", "  Text Block (Kept)  ", "\"\"\"; after()", "x // trailing (y)",
+            "ÉCOLE(x)", "caf\u00e9 (x)", "\u0130stanbul", "\u03a3\u03a3 \u03a3", "a\u0001b", "\u0001lead(x)", "tail(x)\u0001",
+            "\u00a0nbsp(x)\u00a0", "x\u0301(y)", "  MiXeD   CaSe \t Words  ", "a\u000bb\fc", "DEL\u007f(x)"
+    };
+
+    @Test
+    void matchesReferenceOnTrickyLines() {
+        JavaLineNormalizer.StatefulNormalizer fast = new JavaLineNormalizer.StatefulNormalizer();
+        ReferenceNormalizer reference = new ReferenceNormalizer();
+        for (String line : TRICKY_LINES) {
+            assertEquals(reference.normalizeLine(line), fast.normalizeLine(line), "line: " + line);
+        }
+    }
+
+    @Test
+    void matchesReferenceOnDatasets() throws Exception {
+        for (List<String> lines : datasetFiles()) {
+            JavaLineNormalizer.StatefulNormalizer fast = new JavaLineNormalizer.StatefulNormalizer();
+            ReferenceNormalizer reference = new ReferenceNormalizer();
+            for (String line : lines) {
+                assertEquals(reference.normalizeLine(line), fast.normalizeLine(line), "line: " + line);
+            }
+        }
+    }
+
+    @Test
+    void matchesReferenceOnRandomLines() {
+        String alphabet = "aZ_9 (\t);/*\"'\\x\u00e9\u0130\u0001{}.,";
+        Random random = new Random(3110);
+        JavaLineNormalizer.StatefulNormalizer fast = new JavaLineNormalizer.StatefulNormalizer();
+        ReferenceNormalizer reference = new ReferenceNormalizer();
+        for (int n = 0; n < 20000; n++) {
+            int len = random.nextInt(24);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < len; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            String line = sb.toString();
+            assertEquals(reference.normalizeLine(line), fast.normalizeLine(line), "line: " + line);
+        }
+    }
+
+    @Test
+    void streamingMatchesLineByLine() throws Exception {
+        for (List<String> lines : datasetFiles()) {
+            JavaLineNormalizer.StatefulNormalizer byLine = new JavaLineNormalizer.StatefulNormalizer();
+            List<String> expected = new ArrayList<>();
+            for (String line : lines) expected.add(byLine.normalizeLine(line));
+            String input = String.join("\n", lines);
+
+            StringWriter streamed = new StringWriter();
+            new JavaLineNormalizer.StatefulNormalizer().normalize(new StringReader(input), streamed, "\n");
+            assertEquals(String.join("\n", expected), streamed.toString());
+
+            List<String> iterated = new ArrayList<>();
+            new JavaLineNormalizer.StatefulNormalizer()
+                    .normalizedLines(new BufferedReader(new StringReader(input)))
+                    .forEachRemaining(iterated::add);
+            assertEquals(expected, iterated);
+        }
+    }
+
+    @Test
+    void parallelMatchesSequential() throws Exception {
+        List<String> corpus = new ArrayList<>();
+        for (List<String> lines : datasetFiles()) corpus.addAll(lines);
+        // Comment and text-block openers spread over chunk boundaries
+        corpus.add(3, "/* opens a comment");
+        corpus.add(40, "still inside */ code(x);");
+        corpus.add(100, "String t = \"\"\"");
+        corpus.add(260, "\"\"\";");
+
+        JavaLineNormalizer.StatefulNormalizer sequential = new JavaLineNormalizer.StatefulNormalizer();
+        List<String> expected = new ArrayList<>();
+        for (String line : corpus) expected.add(sequential.normalizeLine(line));
+
+        for (int chunkSize : new int[] { 1, 2, 7, 64, 1000, corpus.size() }) {
+            assertEquals(expected, JavaLineNormalizer.normalizeParallel(corpus, chunkSize), "chunk size " + chunkSize);
+        }
+    }
+
+    private static List<List<String>> datasetFiles() throws Exception {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            files = walk.filter(p -> p.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+        List<List<String>> result = new ArrayList<>();
+        for (Path p : files) result.add(Files.readAllLines(p));
+        return result;
+    }
+
+    /** The original multi-pass implementation, kept as the reference for output equality. */
+    static class ReferenceNormalizer {
+        private boolean inBlockComment = false;
+        private boolean inTextBlock = false;
+
+        String normalizeLine(String line) {
+            if (line == null) return "";
+            StringBuilder out = new StringBuilder();
+            int len = line.length();
+            int i = 0;
+            while (i < len) {
+                char c = line.charAt(i);
+                if (inBlockComment) {
+                    if (c == '*' && i + 1 < len && line.charAt(i + 1) == '/') {
+                        inBlockComment = false;
+                        i += 2;
+                        continue;
+                    }
+                    i++;
+                    continue;
+                }
+                if (inTextBlock) {
+                    if (c == '"' && i + 2 < len && line.charAt(i + 1) == '"' && line.charAt(i + 2) == '"') {
+                        inTextBlock = false;
+                        i += 3;
+                        continue;
+                    }
+                    out.append(c);
+                    i++;
+                    continue;
+                }
+                if (c == '/' && i + 1 < len && line.charAt(i + 1) == '/') break;
+                if (c == '/' && i + 1 < len && line.charAt(i + 1) == '*') {
+                    inBlockComment = true;
+                    i += 2;
+                    continue;
+                }
+                if (c == '"' && i + 2 < len && line.charAt(i + 1) == '"' && line.charAt(i + 2) == '"') {
+                    inTextBlock = true;
+                    i += 3;
+                    continue;
+                }
+                if (c == '"' || c == '\'') {
+                    out.append(c);
+                    i++;
+                    while (i < len) {
+                        char ch = line.charAt(i);
+                        out.append(ch);
+                        if (ch == '\\') {
+                            if (i + 1 < len) { i++; out.append(line.charAt(i)); }
+                            i++; continue;
+                        }
+                        if (ch == c) { i++; break; }
+                        i++;
+                    }
+                    continue;
+                }
+                out.append(c);
+                i++;
+            }
+            String result = out.toString();
+            result = result.replace(";", "");
+            result = result.replaceAll("\\b[a-zA-Z_][a-zA-Z0-9_]*\\s*\\(", "func_id(");
+            result = result.trim().replaceAll("\\s+", " ");
+            result = result.toLowerCase();
+            if (result.isEmpty()) return "BLANK_TOKEN";
+            return result;
+        }
+    }
+}
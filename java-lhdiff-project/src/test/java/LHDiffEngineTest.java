@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LHDiffEngineTest {
+
+    @Test
+    void engineMatchesCommandLineOutput() throws Exception {
+        LHDiffEngine engine = new LHDiffEngine();
+        for (Path[] pair : datasetPairs()) {
+            String expected = runMain(pair[0], pair[1]);
+            assertEquals(expected, text(engine.diff(pair[0], pair[1])), pair[0].toString());
+            String oldContent = new String(Files.readAllBytes(pair[0]), StandardCharsets.UTF_8);
+            String newContent = new String(Files.readAllBytes(pair[1]), StandardCharsets.UTF_8);
+            assertEquals(expected, text(engine.diff(oldContent, newContent)), pair[0].toString());
+        }
+    }
+
+    @Test
+    void oneEngineServesConcurrentDiffs() throws Exception {
+        LHDiffEngine engine = new LHDiffEngine(LHDiffConfig.DEFAULTS.withAnchorDiff("histogram"));
+        List<Path[]> pairs = datasetPairs();
+        List<String> expected = new ArrayList<>();
+        for (Path[] pair : pairs) expected.add(text(engine.diff(pair[0], pair[1])));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int round = 0; round < 8; round++) {
+                for (Path[] pair : pairs) results.add(executor.submit(() -> text(engine.diff(pair[0], pair[1]))));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expected.get(i % pairs.size()), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void mappingsCarryTheirMetrics() throws Exception {
+        LHDiffEngine whole = new LHDiffEngine();
+        LHDiffEngine gapLocal = new LHDiffEngine(LHDiffConfig.DEFAULTS.withGapLocal(true, true));
+        for (Path[] pair : datasetPairs()) {
+            LineSnapshot oldSnapshot = LineSnapshot.load(pair[0]);
+            LineSnapshot newSnapshot = LineSnapshot.load(pair[1]);
+            int anchors = new LinesMapping().run(oldSnapshot, newSnapshot).anchorCount();
+            for (LHDiffEngine engine : new LHDiffEngine[] { whole, gapLocal }) {
+                LineMapping mapping = engine.diff(pair[0], pair[1]);
+                DiffMetrics metrics = mapping.metrics;
+                assertEquals(oldSnapshot.size() + newSnapshot.size(), metrics.linesNormalized, pair[0].toString());
+                assertEquals(anchors, metrics.anchors, pair[0].toString());
+                assertTrue(metrics.zipperFills <= oldSnapshot.size());
+                assertTrue(metrics.levenshteinCalls <= metrics.hammingComparisons);
+                long stages = 0;
+                for (DiffMetrics.Stage stage : DiffMetrics.Stage.values()) stages += metrics.nanos(stage);
+                if (!engine.config().gapLocal) assertTrue(stages <= metrics.totalNanos);
+                assertTrue(metrics.toJson().contains("\"anchors\":" + anchors));
+            }
+        }
+        // Diffs of snapshots start from the caller's metrics
+        DiffMetrics metrics = new DiffMetrics();
+        metrics.linesNormalized = 7;
+        LineMapping mapping = whole.diff(LineSnapshot.fromText("a\nb\n"), LineSnapshot.fromText("a\nc\n"), metrics);
+        assertSame(metrics, mapping.metrics);
+        assertEquals(7, metrics.linesNormalized);
+    }
+
+    @Test
+    void configRejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> LHDiffConfig.DEFAULTS.withCandidateLimit(0));
+        assertThrows(IllegalArgumentException.class, () -> LHDiffConfig.DEFAULTS.withWeights(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> LHDiffConfig.DEFAULTS.withAnchorDiff("patience"));
+        assertEquals(15, LHDiffConfig.DEFAULTS.candidateLimit);
+        assertEquals(7, LHDiffConfig.DEFAULTS.withCandidateLimit(7).candidateLimit);
+    }
+
+    private static List<Path[]> datasetPairs() throws Exception {
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            return walk.filter(p -> p.getFileName().toString().toLowerCase().endsWith("_old.java")).sorted()
+                    .map(p -> new Path[] { p, p.resolveSibling(
+                            p.getFileName().toString().replace("_Old", "_New").replace("_old", "_new")) })
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String text(LineMapping mapping) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextMappingWriter().write(mapping, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String runMain(Path oldFile, Path newFile) throws Exception {
+        PrintStream original = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+        try {
+            LHDiffMain.main(new String[] { oldFile.toString(), newFile.toString() });
+        } finally {
+            System.setOut(original);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
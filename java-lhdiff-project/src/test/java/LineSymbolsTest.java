@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class LineSymbolsTest {
+
+    @Test
+    void equalLinesGetEqualIds() {
+        List<String> oldLines = Arrays.asList("int x = 1;", "BLANK_TOKEN", "}", "return x;", "}");
+        List<String> newLines = Arrays.asList("}", "int x = 2;", "BLANK_TOKEN", "return x;", "int x = 1;");
+        LineSymbols symbols = new LineSymbols(oldLines, newLines);
+
+        for (int i = 0; i < oldLines.size(); i++) {
+            for (int j = 0; j < newLines.size(); j++) {
+                assertEquals(oldLines.get(i).equals(newLines.get(j)), symbols.oldIds[i] == symbols.newIds[j], i + " vs " + j);
+            }
+        }
+        assertEquals(LineSymbols.BLANK, symbols.oldIds[1]);
+        assertEquals(LineSymbols.BLANK, symbols.newIds[2]);
+        assertNotEquals(LineSymbols.BLANK, symbols.oldIds[0]);
+        assertEquals(symbols.oldIds[2], symbols.oldIds[4]);
+        // blank, "int x = 1;", "}", "return x;", "int x = 2;"
+        assertEquals(5, symbols.symbolCount());
+    }
+
+    @Test
+    void manyDistinctLinesGrowTheTable() {
+        String[] lines = new String[5000];
+        for (int i = 0; i < lines.length; i++) lines[i] = "line " + i;
+        List<String> oldLines = Arrays.asList(lines);
+        String[] reversed = new String[lines.length];
+        for (int i = 0; i < lines.length; i++) reversed[i] = lines[lines.length - 1 - i];
+        LineSymbols symbols = new LineSymbols(oldLines, Arrays.asList(reversed));
+
+        assertEquals(lines.length + 1, symbols.symbolCount());
+        for (int i = 0; i < lines.length; i++) assertEquals(symbols.oldIds[i], symbols.newIds[lines.length - 1 - i]);
+
+        LineSymbols slice = symbols.slice(10, 20, 0, 5);
+        assertArrayEquals(Arrays.copyOfRange(symbols.oldIds, 10, 20), slice.oldIds);
+        assertArrayEquals(Arrays.copyOfRange(symbols.newIds, 0, 5), slice.newIds);
+    }
+}
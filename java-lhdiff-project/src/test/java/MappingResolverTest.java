@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappingResolverTest {
+
+    @Test
+    void resultsDoNotDependOnThreadCount() throws Exception {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            files = walk.filter(p -> p.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool three = new ForkJoinPool(3);
+        try {
+            // All old files against all new files in reverse order: many moved blocks and
+            // enough unmapped lines to split the scoring into several tasks
+            List<String> oldLines = new ArrayList<>();
+            List<String> newLines = new ArrayList<>();
+            for (int f = 0; f < files.size(); f++) {
+                String name = files.get(f).getFileName().toString().toLowerCase();
+                if (name.contains("_old")) oldLines.addAll(Files.readAllLines(files.get(f)));
+                else newLines.addAll(0, Files.readAllLines(files.get(f)));
+            }
+            LineSnapshot oldSnapshot = LineSnapshot.fromLines(oldLines);
+            LineSnapshot newSnapshot = LineSnapshot.fromLines(newLines);
+            for (MappingResolver.Assignment assignment : MappingResolver.Assignment.values()) {
+                int[] sequential = resolve(oldSnapshot, newSnapshot, new MappingResolver(assignment, one));
+                int[] parallel = resolve(oldSnapshot, newSnapshot, new MappingResolver(assignment, three));
+                assertArrayEquals(sequential, parallel, assignment.toString());
+                assertOneToOne(sequential, newSnapshot.size());
+            }
+        } finally {
+            one.shutdown();
+            three.shutdown();
+        }
+    }
+
+    private static int[] resolve(LineSnapshot oldSnapshot, LineSnapshot newSnapshot, MappingResolver resolver) {
+        Step2Result step2 = new LinesMapping().run(oldSnapshot, newSnapshot);
+        CandidateTable candidates = SimhashGenerator.LineSimhash.generateCandidates(
+                oldSnapshot.lineSimhashes(4), newSnapshot.lineSimhashes(4), step2.unmappedOld, step2.unmappedNew, 15);
+        BitSet unmappedOld = (BitSet) step2.unmappedOld.clone();
+        BitSet unmappedNew = (BitSet) step2.unmappedNew.clone();
+        int[] matches = resolver.resolveCandidates(oldSnapshot, newSnapshot, step2.symbols, candidates, unmappedOld, unmappedNew);
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] >= 0) {
+                assertTrue(step2.unmappedOld.get(i) && !unmappedOld.get(i));
+                assertTrue(step2.unmappedNew.get(matches[i]) && !unmappedNew.get(matches[i]));
+            }
+        }
+        return matches;
+    }
+
+    private static void assertOneToOne(int[] matches, int newSize) {
+        BitSet used = new BitSet(newSize);
+        for (int m : matches) {
+            if (m < 0) continue;
+            assertEquals(false, used.get(m), "new line " + m + " matched twice");
+            used.set(m);
+        }
+    }
+
+    @Test
+    void invalidWeightsAreRejected() {
+        MappingResolver.Assignment order = MappingResolver.Assignment.OLD_ORDER;
+        assertThrows(IllegalArgumentException.class, () -> new MappingResolver(order, null, 0.0, 0.4, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new MappingResolver(order, null, Double.NaN, 0.4, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new MappingResolver(order, null, 0.6, -0.1, 0.5));
+    }
+}
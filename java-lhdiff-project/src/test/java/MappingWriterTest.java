@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MappingWriterTest {
+
+    @Test
+    void binaryRoundTrips() throws Exception {
+        Random random = new Random(17);
+        for (int round = 0; round < 200; round++) {
+            LineMapping mapping = randomMapping(random, random.nextInt(round < 100 ? 50 : 40000));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BinaryMappingWriter().write(mapping, out);
+            LineMapping read = BinaryMappingWriter.read(new ByteArrayInputStream(out.toByteArray()));
+            assertArrayEquals(mapping.newStart, read.newStart);
+            assertArrayEquals(mapping.newEnd, read.newEnd);
+            assertEquals(mapping.newSize, read.newSize);
+            assertEquals(mapping.oldBlank, read.oldBlank);
+            assertEquals(mapping.newBlank, read.newBlank);
+        }
+    }
+
+    @Test
+    void textAndXmlReportTheSameLines() throws Exception {
+        int[] start = { 0, -1, 2, 1, -1 };
+        int[] end = { 0, -1, 4, 1, -1 };
+        BitSet oldBlank = new BitSet();
+        oldBlank.set(4);
+        BitSet newBlank = new BitSet();
+        newBlank.set(6);
+        LineMapping mapping = new LineMapping(start, end, 8, oldBlank, newBlank);
+
+        String nl = System.lineSeparator();
+        assertEquals("1 -> 1" + nl + "2 -> -1" + nl + "3 -> 3-5" + nl + "4 -> 2" + nl
+                + "-1 -> 6" + nl + "-1 -> 8" + nl, write(new TextMappingWriter(), mapping));
+        String xml = write(new XmlMappingWriter("TEST01", "File01.java"), mapping);
+        assertEquals("<TEST NAME=\"TEST01\" FILE=\"File01.java\">" + nl + " <VERSION NUMBER=\"1\">" + nl
+                + location(1, 1) + location(2, -1) + location(3, 3) + location(3, 4) + location(3, 5)
+                + location(4, 2) + location(-1, 6) + location(-1, 8)
+                + " </VERSION>" + nl + "</TEST>" + nl, xml);
+    }
+
+    private static String location(int orig, int nu) {
+        return "   <LOCATION ORIG=\"" + orig + "\" NEW=\"" + nu + "\" />" + System.lineSeparator();
+    }
+
+    private static String write(MappingWriter writer, LineMapping mapping) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(mapping, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static LineMapping randomMapping(Random random, int oldSize) {
+        int newSize = random.nextInt(oldSize * 2 + 1);
+        int[] start = new int[oldSize];
+        int[] end = new int[oldSize];
+        BitSet oldBlank = new BitSet();
+        BitSet newBlank = new BitSet();
+        for (int i = 0; i < oldSize; i++) {
+            start[i] = end[i] = -1;
+            if (newSize > 0 && random.nextInt(4) != 0) {
+                start[i] = random.nextInt(newSize);
+                end[i] = Math.min(newSize - 1, start[i] + (random.nextInt(10) == 0 ? random.nextInt(3) : 0));
+            }
+            if (random.nextInt(8) == 0) oldBlank.set(i);
+        }
+        for (int j = 0; j < newSize; j++) if (random.nextInt(8) == 0) newBlank.set(j);
+        return new LineMapping(start, end, newSize, oldBlank, newBlank);
+    }
+}
@@ -0,0 +1,45 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RevisionTrackerTest {
+
+    @Test
+    void composedMappingsFollowEachStep() throws Exception {
+        Path v1 = Paths.get("./datasets/Aakanksha/File05_Old.java");
+        Path v2 = Paths.get("./datasets/Aakanksha/File05_New.java");
+        Path v3 = Paths.get("./datasets/Aakanksha/File06_New.java");
+        LHDiffEngine engine = new LHDiffEngine();
+        RevisionTracker.History history = new RevisionTracker(engine).track(Arrays.asList(v1, v2, v1, v3));
+
+        assertEquals(4, history.revisionCount());
+        assertArrayEquals(engine.diff(v1, v2).newStart, history.steps.get(0).newStart);
+        assertArrayEquals(engine.diff(v2, v1).newStart, history.steps.get(1).newStart);
+        assertArrayEquals(engine.diff(v1, v3).newStart, history.steps.get(2).newStart);
+
+        for (int from = 0; from < 4; from++) {
+            int[][] table = history.table(from);
+            for (int to = 0; to < 4; to++) {
+                assertArrayEquals(history.compose(from, to), table[to], from + " -> " + to);
+            }
+            for (int line = 0; line < history.size(from); line++) {
+                int[] location = history.locate(from, line);
+                for (int k = 0; k < 4; k++) assertEquals(table[k][line], location[k]);
+            }
+        }
+
+        // One step forward equals the step's own mapping; one step back lands on a line
+        // that maps forward to the same place (Step 6 can map two old lines to one new line)
+        int[] step = history.steps.get(0).newStart;
+        int[] back = history.compose(1, 0);
+        assertArrayEquals(step, history.compose(0, 1));
+        for (int i = 0; i < step.length; i++) {
+            if (step[i] >= 0) assertEquals(step[i], step[back[step[i]]]);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SimhashGeneratorTest {
+
+    private final SimhashGenerator.LineSimhash generator = new SimhashGenerator.LineSimhash(0, 0L, 0L);
+
+    @Test
+    void slidingWindowMatchesPerLineHashingOnDatasets() throws Exception {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            files = walk.filter(p -> p.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            List<String> raw = Files.readAllLines(file);
+            assertMatchesPerLine(raw, 4);
+            assertMatchesPerLine(JavaLineNormalizer.normalizeAll(raw), 4);
+        }
+    }
+
+    @Test
+    void slidingWindowMatchesPerLineHashingOnRandomLines() {
+        String alphabet = "aZq_9 \t\u000b\f();{}\u0001éİ ";
+        Random random = new Random(64);
+        for (int round = 0; round < 300; round++) {
+            List<String> lines = new ArrayList<>();
+            int n = random.nextInt(30);
+            for (int i = 0; i < n; i++) {
+                StringBuilder sb = new StringBuilder();
+                int len = random.nextInt(16);
+                for (int c = 0; c < len; c++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                lines.add(sb.toString());
+            }
+            assertMatchesPerLine(lines, random.nextInt(6));
+        }
+    }
+
+    @Test
+    void computeSimhashMatchesReference() {
+        Random random = new Random(21);
+        for (int round = 0; round < 2000; round++) {
+            StringBuilder sb = new StringBuilder();
+            int tokens = random.nextInt(round < 1000 ? 12 : 700); // past the 255-token lane flush
+            for (int t = 0; t < tokens; t++) sb.append(random.nextInt(5000)).append(random.nextBoolean() ? " " : "\t ");
+            String text = sb.toString();
+            assertEquals(referenceSimhash(text), generator.computeSimhash(text), "round " + round);
+        }
+    }
+
+    // The original definition: hash the normalized line, and hash its extracted context
+    private void assertMatchesPerLine(List<String> lines, int windowSize) {
+        SimhashGenerator.LineSimhash[] hashes = generator.buildLineSimhashes(lines, windowSize);
+        assertEquals(lines.size(), hashes.length);
+        for (int i = 0; i < lines.size(); i++) {
+            long content = referenceSimhash(generator.normalizeLine(lines.get(i)));
+            long context = referenceSimhash(generator.extractContext(lines, i, windowSize));
+            assertEquals(content, hashes[i].ContentSimhash, "content of line " + i + ": " + lines.get(i));
+            assertEquals(context, hashes[i].ContextSimhash, "context of line " + i + ", window " + windowSize);
+        }
+    }
+
+    /** The original bit-at-a-time SimHash, kept as the reference for output equality. */
+    long referenceSimhash(String text) {
+        if (text == null || text.isEmpty()) return 0L;
+        int[] bitVector = new int[64];
+        for (String token : text.split("\\s+")) {
+            if (token.isEmpty()) continue;
+            long hash = generator.hash64(token);
+            for (int bit = 0; bit < 64; bit++) {
+                if ((hash & (1L << bit)) != 0) bitVector[bit] += 1;
+                else bitVector[bit] -= 1;
+            }
+        }
+        long simhash = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (bitVector[bit] > 0) simhash |= 1L << bit;
+        }
+        return simhash;
+    }
+}
@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimhashIndexTest {
+
+    @Test
+    void probeFindsEveryHashWithinRadius() {
+        Random random = new Random(5);
+        long[] hashes = new long[5000];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = random.nextLong();
+        SimhashIndex index = new SimhashIndex(hashes);
+        int[] out = new int[hashes.length];
+        for (int round = 0; round < 500; round++) {
+            // Query near a stored hash, so there is always something within the radius
+            long query = flipBits(random, hashes[random.nextInt(hashes.length)], random.nextInt(SimhashIndex.RADIUS + 1));
+            int count = index.probe(query, out);
+            BitSet probed = new BitSet();
+            for (int q = 0; q < count; q++) {
+                assertTrue(q == 0 || out[q - 1] < out[q], "positions must be ascending and distinct");
+                probed.set(out[q]);
+            }
+            for (int p = 0; p < hashes.length; p++) {
+                if (Long.bitCount(query ^ hashes[p]) <= SimhashIndex.RADIUS) {
+                    assertTrue(probed.get(p), "round " + round + " missed position " + p);
+                }
+            }
+        }
+    }
+
+    @Test
+    void indexedCandidatesAgreeWithFullScanWithinRadius() {
+        Random random = new Random(9);
+        int n = 3000;
+        SimhashGenerator.LineSimhash[] newHashes = new SimhashGenerator.LineSimhash[n];
+        SimhashGenerator.LineSimhash[] oldHashes = new SimhashGenerator.LineSimhash[n];
+        for (int i = 0; i < n; i++) {
+            long h = random.nextLong();
+            newHashes[i] = new SimhashGenerator.LineSimhash(i, h, 0L);
+            // Most old lines have a few close neighbours, some have none
+            long o = random.nextInt(4) == 0 ? random.nextLong() : flipBits(random, h, random.nextInt(6));
+            oldHashes[i] = new SimhashGenerator.LineSimhash(i, o, 0L);
+        }
+        BitSet unmappedOld = new BitSet();
+        BitSet unmappedNew = new BitSet();
+        for (int i = 0; i < n; i++) {
+            if (random.nextInt(5) != 0) unmappedOld.set(i);
+            if (random.nextInt(5) != 0) unmappedNew.set(i);
+        }
+
+        CandidateTable full = SimhashGenerator.LineSimhash.generateCandidates(oldHashes, newHashes, unmappedOld, unmappedNew, 15, false);
+        CandidateTable indexed = SimhashGenerator.LineSimhash.generateCandidates(oldHashes, newHashes, unmappedOld, unmappedNew, 15, true);
+        for (int i = 0; i < n; i++) {
+            int fs = full.start(i), is = indexed.start(i);
+            // Both lists are sorted best first, so they agree up to the radius
+            for (; fs < full.end(i) && full.distance[fs] <= SimhashIndex.RADIUS; fs++, is++) {
+                assertTrue(is < indexed.end(i), "old line " + i);
+                assertEquals(full.newIndex[fs], indexed.newIndex[is], "old line " + i);
+                assertEquals(full.distance[fs], indexed.distance[is], "old line " + i);
+            }
+            for (int c = indexed.start(i); c < indexed.end(i); c++) {
+                assertTrue(unmappedNew.get(indexed.newIndex[c]), "only unmapped new lines are candidates");
+            }
+        }
+    }
+
+    @Test
+    void probesOfSpreadHashesVisitFewEntries() {
+        Random random = new Random(11);
+        long[] hashes = new long[1 << 16];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = random.nextLong();
+        SimhashIndex index = new SimhashIndex(hashes);
+        assertTrue(index.radius() >= SimhashIndex.RADIUS);
+        int[] out = new int[hashes.length];
+        long visited = 0;
+        for (int q = 0; q < 1000; q++) visited += index.probe(random.nextLong(), out);
+        // Buckets hold about one entry each, so a probe costs about the same at any size
+        assertTrue(visited / 1000 < hashes.length / 256, "average probe visited " + visited / 1000);
+    }
+
+    @Test
+    void recallLossAtTheSwitchPoint() {
+        // 2048 x 2048 unmapped lines: exactly INDEX_MIN_PAIRS pairs, so the index is considered
+        int n = 2048;
+        assertEquals(SimhashGenerator.LineSimhash.INDEX_MIN_PAIRS, (long) n * n);
+        Random random = new Random(13);
+        SimhashGenerator.LineSimhash[] newHashes = new SimhashGenerator.LineSimhash[n];
+        SimhashGenerator.LineSimhash[] oldHashes = new SimhashGenerator.LineSimhash[n];
+        for (int i = 0; i < n; i++) {
+            long h = random.nextLong();
+            newHashes[i] = new SimhashGenerator.LineSimhash(i, h, 0L);
+            // Neighbours both inside and outside the radius
+            oldHashes[i] = new SimhashGenerator.LineSimhash(i, flipBits(random, h, random.nextInt(16)), 0L);
+        }
+        BitSet all = new BitSet();
+        all.set(0, n);
+
+        CandidateTable full = SimhashGenerator.LineSimhash.generateCandidates(oldHashes, newHashes, all, all, 15, false);
+        CandidateTable chosen = SimhashGenerator.LineSimhash.generateCandidates(oldHashes, newHashes, all, all, 15);
+        assertTrue(chosen.comparisons * SimhashGenerator.LineSimhash.INDEX_MAX_SHARE <= (long) n * n,
+                "spread hashes should be searched through the index");
+
+        int lost = 0;
+        for (int i = 0; i < n; i++) {
+            BitSet found = new BitSet();
+            for (int c = chosen.start(i); c < chosen.end(i); c++) found.set(chosen.newIndex[c]);
+            for (int c = full.start(i); c < full.end(i); c++) {
+                if (found.get(full.newIndex[c])) continue;
+                // Only candidates beyond the radius may be missing
+                assertTrue(full.distance[c] > SimhashIndex.RADIUS, "old line " + i + " lost a near candidate");
+                lost++;
+            }
+            assertTrue(chosen.end(i) - chosen.start(i) <= 15);
+        }
+        // The loss is real: uniform random lines have hardly any other line within 7 bits
+        assertTrue(lost > n, "lost " + lost);
+    }
+
+    @Test
+    void clusteredHashesAreScanned() {
+        // Like real code: most lines are a few bits away from one of a handful of shapes
+        Random random = new Random(17);
+        long[] shapes = new long[8];
+        for (int s = 0; s < shapes.length; s++) shapes[s] = random.nextLong();
+        int n = 2048;
+        SimhashGenerator.LineSimhash[] newHashes = new SimhashGenerator.LineSimhash[n];
+        SimhashGenerator.LineSimhash[] oldHashes = new SimhashGenerator.LineSimhash[n];
+        for (int i = 0; i < n; i++) {
+            newHashes[i] = new SimhashGenerator.LineSimhash(i, flipBits(random, shapes[random.nextInt(8)], 3), 0L);
+            oldHashes[i] = new SimhashGenerator.LineSimhash(i, flipBits(random, shapes[random.nextInt(8)], 3), 0L);
+        }
+        BitSet all = new BitSet();
+        all.set(0, n);
+        CandidateTable full = SimhashGenerator.LineSimhash.generateCandidates(oldHashes, newHashes, all, all, 15, false);
+        CandidateTable chosen = SimhashGenerator.LineSimhash.generateCandidates(oldHashes, newHashes, all, all, 15);
+        assertEquals((long) n * n, chosen.comparisons);
+        assertArrayEquals(full.offsets, chosen.offsets);
+        assertArrayEquals(full.newIndex, chosen.newIndex);
+    }
+
+    private static long flipBits(Random random, long hash, int bits) {
+        BitSet flipped = new BitSet();
+        while (flipped.cardinality() < bits) flipped.set(random.nextInt(64));
+        for (int b = flipped.nextSetBit(0); b >= 0; b = flipped.nextSetBit(b + 1)) hash ^= 1L << b;
+        return hash;
+    }
+}
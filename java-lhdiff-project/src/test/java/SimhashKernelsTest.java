@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SimhashKernelsTest {
+
+    @Test
+    void votesMatchBitAtATimeCounting() {
+        Random random = new Random(1);
+        SimhashKernels.VoteAccumulator acc = new SimhashKernels.VoteAccumulator();
+        int[] votes = new int[64];
+        for (int round = 0; round < 200; round++) {
+            acc.reset();
+            int[] expected = new int[64];
+            int tokens = random.nextInt(round < 100 ? 20 : 2000);
+            for (int t = 0; t < tokens; t++) {
+                // Skewed hashes push single lanes towards their 255 limit
+                long h = random.nextBoolean() ? -1L : random.nextLong();
+                acc.add(h);
+                for (int bit = 0; bit < 64; bit++) expected[bit] += ((h >>> bit) & 1L) != 0 ? 1 : -1;
+            }
+            acc.votes(votes);
+            assertArrayEquals(expected, votes, "round " + round);
+            long simhash = 0L;
+            for (int bit = 0; bit < 64; bit++) if (expected[bit] > 0) simhash |= 1L << bit;
+            assertEquals(simhash, acc.simhash(), "round " + round);
+        }
+    }
+
+    @Test
+    void scansMatchBitCount() {
+        Random random = new Random(2);
+        long[] hashes = new long[103];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = random.nextLong();
+        int[] positions = new int[50];
+        for (int i = 0; i < positions.length; i++) positions[i] = random.nextInt(hashes.length);
+        for (int round = 0; round < 100; round++) {
+            long query = random.nextLong();
+            int count = random.nextInt(hashes.length + 1);
+            int[] out = new int[hashes.length];
+            int[] histogram = new int[65];
+            SimhashKernels.hammingScan(query, hashes, count, out, histogram);
+            int[] expectedHistogram = new int[65];
+            for (int i = 0; i < count; i++) {
+                assertEquals(Long.bitCount(query ^ hashes[i]), out[i]);
+                expectedHistogram[out[i]]++;
+            }
+            assertArrayEquals(expectedHistogram, histogram);
+
+            int gathered = random.nextInt(positions.length + 1);
+            histogram = new int[65];
+            SimhashKernels.hammingGather(query, hashes, positions, gathered, out, histogram);
+            for (int i = 0; i < gathered; i++) assertEquals(Long.bitCount(query ^ hashes[positions[i]]), out[i]);
+        }
+    }
+}
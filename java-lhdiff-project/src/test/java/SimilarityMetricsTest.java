@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimilarityMetricsTest {
+
+    @Test
+    void boundedDistanceMatchesFullDp() {
+        Random random = new Random(12);
+        String alphabet = "abcab (){};é中";
+        for (int round = 0; round < 20000; round++) {
+            // Lengths on both sides of the 64-character word limit
+            String a = randomString(random, alphabet, random.nextInt(round % 2 == 0 ? 70 : 160));
+            String b = random.nextBoolean() ? mutate(random, alphabet, a) : randomString(random, alphabet, random.nextInt(160));
+            int exact = referenceDistance(a, b);
+            int limit = random.nextInt(Math.max(a.length(), b.length()) + 2);
+            int bounded = SimilarityMetrics.calculateLevenshteinDistance(a, b, limit);
+            if (exact <= limit) assertEquals(exact, bounded, a + " / " + b + " limit " + limit);
+            else assertTrue(bounded > limit, a + " / " + b + " limit " + limit);
+            assertEquals(exact, SimilarityMetrics.calculateLevenshteinDistance(a, b, Integer.MAX_VALUE / 4));
+        }
+    }
+
+    @Test
+    void thresholdedSimilarityIsExactAboveTheThreshold() {
+        Random random = new Random(13);
+        String alphabet = "abcd ();";
+        for (int round = 0; round < 20000; round++) {
+            String a = randomString(random, alphabet, random.nextInt(90));
+            String b = mutate(random, alphabet, a);
+            double full = referenceSimilarity(a, b);
+            assertEquals(full, SimilarityMetrics.getContentSimilarity(a, b));
+            double min = random.nextDouble();
+            double bounded = SimilarityMetrics.getContentSimilarity(a, b, min);
+            if (full >= min) assertEquals(full, bounded, a + " / " + b);
+            else assertTrue(bounded < min, a + " / " + b);
+            // Bounds sitting exactly on a reachable score
+            assertEquals(full, SimilarityMetrics.getContentSimilarity(a, b, full));
+        }
+    }
+
+    @Test
+    void contentStreamMatchesRecomputation() {
+        Random random = new Random(14);
+        String alphabet = "abc (;é";
+        SimilarityMetrics.ContentStream stream = new SimilarityMetrics.ContentStream();
+        for (int round = 0; round < 3000; round++) {
+            // Fixed strings of one, two and three words
+            String fixed = randomString(random, alphabet, random.nextInt(round % 3 == 0 ? 200 : 70));
+            stream.reset(fixed);
+            for (int restart = 0; restart < 3; restart++) {
+                stream.clear();
+                StringBuilder text = new StringBuilder();
+                int pieces = 1 + random.nextInt(4);
+                for (int p = 0; p < pieces; p++) {
+                    String piece = random.nextInt(4) == 0 ? mutate(random, alphabet, fixed) : randomString(random, alphabet, random.nextInt(30));
+                    if (p > 0) {
+                        text.append(' ');
+                        stream.append(' ');
+                    }
+                    text.append(piece);
+                    stream.append(piece);
+                    assertEquals(text.length(), stream.textLength());
+                    assertEquals(referenceSimilarity(fixed, text.toString()), stream.similarity(), fixed + " / " + text);
+                }
+            }
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String alphabet, String s) {
+        StringBuilder sb = new StringBuilder(s);
+        int edits = random.nextInt(8);
+        for (int e = 0; e < edits; e++) {
+            int pos = sb.length() == 0 ? 0 : random.nextInt(sb.length());
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            switch (random.nextInt(3)) {
+                case 0: sb.insert(pos, c); break;
+                case 1: if (sb.length() > 0) sb.deleteCharAt(pos); break;
+                default: if (sb.length() > 0) sb.setCharAt(pos, c); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /** The original full O(m*n) dynamic program. */
+    private static int referenceDistance(String s1, String s2) {
+        int m = s1.length();
+        int n = s2.length();
+        if (m == 0) return n;
+        if (n == 0) return m;
+        int[] costs = new int[n + 1];
+        for (int j = 0; j <= n; j++) costs[j] = j;
+        for (int i = 1; i <= m; i++) {
+            costs[0] = i;
+            int lastValue = i - 1;
+            for (int j = 1; j <= n; j++) {
+                int temp = costs[j];
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                costs[j] = Math.min(costs[j], Math.min(costs[j - 1] + 1, lastValue + cost));
+                lastValue = temp;
+            }
+        }
+        return costs[n];
+    }
+
+    private static double referenceSimilarity(String s1, String s2) {
+        int maxLen = Math.max(s1.length(), s2.length());
+        if (maxLen == 0) return 1.0;
+        return 1.0 - ((double) referenceDistance(s1, s2) / maxLen);
+    }
+}
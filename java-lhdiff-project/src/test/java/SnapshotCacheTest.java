@@ -0,0 +1,148 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotCacheTest {
+    private static final Path SOURCE = Paths.get("./datasets/Aakanksha/File01_Old.java");
+    private static final int WINDOW = 4;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void cachedSnapshotEqualsAFreshOne() throws Exception {
+        SnapshotCache cache = new SnapshotCache(temp.resolve("cache"), 1L << 20);
+        LineSnapshot first = cache.load(SOURCE, WINDOW);
+        assertEquals(1, entries(temp.resolve("cache")).size());
+        LineSnapshot second = cache.load(SOURCE, WINDOW);
+        assertEquals(1, entries(temp.resolve("cache")).size());
+        assertSameSnapshot(LineSnapshot.load(SOURCE), first);
+        assertSameSnapshot(LineSnapshot.load(SOURCE), second);
+
+        // Another window size is another entry
+        cache.load(SOURCE, WINDOW + 1);
+        assertEquals(2, entries(temp.resolve("cache")).size());
+    }
+
+    @Test
+    void evictionKeepsTheCacheUnderItsLimit() throws Exception {
+        Path dir = temp.resolve("cache");
+        SnapshotCache cache = new SnapshotCache(dir, Long.MAX_VALUE);
+        cache.load(SOURCE, WINDOW);
+        long entrySize = Files.size(entries(dir).get(0));
+
+        long limit = 2 * entrySize + entrySize / 2;
+        cache = new SnapshotCache(dir, limit);
+        List<String> lines = Files.readAllLines(SOURCE);
+        for (int k = 0; k < 6; k++) {
+            // Same line count, different content
+            List<String> variant = new ArrayList<>(lines);
+            variant.set(0, "// variant " + k);
+            Path file = temp.resolve("Variant" + k + ".java");
+            Files.write(file, variant);
+            cache.load(file, WINDOW);
+
+            long total = 0;
+            for (Path entry : entries(dir)) total += Files.size(entry);
+            assertTrue(total <= limit, "cache grew to " + total + " bytes");
+        }
+        assertTrue(entries(dir).size() <= 2);
+    }
+
+    @Test
+    void corruptAndTruncatedEntriesAreRecomputed() throws Exception {
+        Path dir = temp.resolve("cache");
+        SnapshotCache cache = new SnapshotCache(dir, 1L << 20);
+        cache.load(SOURCE, WINDOW);
+        Path entry = entries(dir).get(0);
+        byte[] valid = Files.readAllBytes(entry);
+
+        // Wrong magic number
+        byte[] corrupt = valid.clone();
+        corrupt[0] ^= 0x55;
+        Files.write(entry, corrupt);
+        assertSameSnapshot(LineSnapshot.load(SOURCE), cache.load(SOURCE, WINDOW));
+        assertTrue(Arrays.equals(valid, Files.readAllBytes(entry)), "entry was not rewritten");
+
+        // Cut off in the middle of the SimHashes
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.WRITE)) {
+            channel.truncate(24);
+        }
+        assertSameSnapshot(LineSnapshot.load(SOURCE), cache.load(SOURCE, WINDOW));
+        assertTrue(Arrays.equals(valid, Files.readAllBytes(entry)), "entry was not rewritten");
+
+        // Right header, wrong format version
+        byte[] format = valid.clone();
+        ByteBuffer.wrap(format).putInt(4, 99);
+        Files.write(entry, format);
+        assertSameSnapshot(LineSnapshot.load(SOURCE), cache.load(SOURCE, WINDOW));
+    }
+
+    @Test
+    void failedWriteLeavesNoTemporaryFile() throws Exception {
+        Path dir = temp.resolve("cache");
+        SnapshotCache cache = new SnapshotCache(dir, 1L << 20);
+        cache.load(SOURCE, WINDOW);
+        // A non-empty directory where the entry goes: reading misses and the move fails
+        Path entry = entries(dir).get(0);
+        Files.delete(entry);
+        Files.createDirectories(entry.resolve("blocker"));
+        assertThrows(IOException.class, () -> cache.load(SOURCE, WINDOW));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.tmp")) {
+            assertFalse(stream.iterator().hasNext(), "temporary entry was left behind");
+        }
+    }
+
+    @Test
+    void engineReadsEveryRevisionThroughTheCache() throws Exception {
+        Path dir = temp.resolve("cache");
+        LHDiffEngine cached = new LHDiffEngine(LHDiffConfig.DEFAULTS, null, new SnapshotCache(dir, 1L << 20));
+        List<Path> revisions = Arrays.asList(SOURCE, Paths.get("./datasets/Aakanksha/File01_New.java"), SOURCE);
+        RevisionTracker.History expected = new RevisionTracker(new LHDiffEngine()).track(revisions);
+        for (int round = 0; round < 2; round++) {
+            RevisionTracker.History history = new RevisionTracker(cached).track(revisions);
+            for (int k = 0; k < expected.steps.size(); k++) {
+                assertTrue(Arrays.equals(expected.steps.get(k).newStart, history.steps.get(k).newStart));
+                assertTrue(Arrays.equals(expected.steps.get(k).newEnd, history.steps.get(k).newEnd));
+            }
+            assertEquals(2, entries(dir).size());
+        }
+    }
+
+    private static void assertSameSnapshot(LineSnapshot expected, LineSnapshot actual) {
+        assertEquals(expected.rawLines, actual.rawLines);
+        assertEquals(expected.normalizedLines, actual.normalizedLines);
+        SimhashGenerator.LineSimhash[] a = expected.lineSimhashes(WINDOW);
+        SimhashGenerator.LineSimhash[] b = actual.lineSimhashes(WINDOW);
+        assertEquals(a.length, b.length);
+        for (int i = 0; i < a.length; i++) {
+            assertEquals(a[i].ContentSimhash, b[i].ContentSimhash);
+            assertEquals(a[i].ContextSimhash, b[i].ContextSimhash);
+            assertEquals(a[i].CombinedSimhash, b[i].CombinedSimhash);
+        }
+    }
+
+    private static List<Path> entries(Path dir) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.lhc")) {
+            for (Path p : stream) entries.add(p);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TreeDiffTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void pairsFilesByRelativePath() throws Exception {
+        Path oldRoot = Files.createDirectories(temp.resolve("old"));
+        Path newRoot = Files.createDirectories(temp.resolve("new"));
+        List<Path> oldFiles;
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            oldFiles = walk.filter(p -> p.getFileName().toString().toLowerCase().endsWith("_old.java"))
+                    .sorted().collect(Collectors.toList());
+        }
+        for (Path oldFile : oldFiles) {
+            String name = oldFile.getFileName().toString();
+            Path newFile = oldFile.resolveSibling(name.replace("_Old", "_New").replace("_old", "_new"));
+            String relative = oldFile.getParent().getFileName() + "/" + name.replace("_Old", "").replace("_old", "");
+            copy(oldFile, oldRoot.resolve(relative));
+            copy(newFile, newRoot.resolve(relative));
+        }
+        copy(oldFiles.get(0), oldRoot.resolve("same/Same.java"));
+        copy(oldFiles.get(0), newRoot.resolve("same/Same.java"));
+        copy(oldFiles.get(1), oldRoot.resolve("Deleted.java"));
+        copy(oldFiles.get(2), newRoot.resolve("Added.java"));
+        Files.write(oldRoot.resolve("notes.txt"), "skipped".getBytes(StandardCharsets.UTF_8));
+
+        LHDiffEngine engine = new LHDiffEngine();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        TreeDiff.Result result;
+        try {
+            result = new TreeDiff(engine, ".java", pool).run(oldRoot, newRoot);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(oldFiles.size() + 3, result.files.size());
+        assertEquals(1, result.count(TreeDiff.Status.ADDED));
+        assertEquals(1, result.count(TreeDiff.Status.DELETED));
+        assertEquals(0, result.count(TreeDiff.Status.FAILED));
+        for (int i = 1; i < result.files.size(); i++) {
+            assertEquals(-1, Integer.signum(result.files.get(i - 1).path.compareTo(result.files.get(i).path)));
+        }
+        for (TreeDiff.FileResult file : result.files) {
+            if (file.mapping == null) {
+                assertNull(file.error);
+                continue;
+            }
+            // The identical-content shortcut must agree with the full pipeline
+            LineMapping expected = engine.diff(oldRoot.resolve(file.path), newRoot.resolve(file.path));
+            assertEquals(text(expected), text(file.mapping), file.path);
+        }
+        assertEquals(TreeDiff.Status.IDENTICAL, result.files.stream()
+                .filter(f -> f.path.equals("same/Same.java")).findFirst().get().status);
+    }
+
+    @Test
+    void binaryTreeOutputIsOneFramePerFile() throws Exception {
+        Path oldRoot = temp.resolve("old");
+        Path newRoot = temp.resolve("new");
+        Path dataset = Paths.get("./datasets/Aakanksha");
+        copy(dataset.resolve("File01_Old.java"), oldRoot.resolve("a/File01.java"));
+        copy(dataset.resolve("File01_New.java"), newRoot.resolve("a/File01.java"));
+        copy(dataset.resolve("File02_Old.java"), oldRoot.resolve("b/File02.java"));
+        copy(dataset.resolve("File02_New.java"), newRoot.resolve("b/File02.java"));
+        copy(dataset.resolve("File03_Old.java"), newRoot.resolve("c/Added.java"));
+
+        PrintStream original = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true));
+        try {
+            LHDiffMain.main(new String[] { "--tree", "--format", "binary", oldRoot.toString(), newRoot.toString() });
+        } finally {
+            System.setOut(original);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        LHDiffEngine engine = new LHDiffEngine();
+        String[] paths = { "a/File01.java", "b/File02.java", "c/Added.java" };
+        for (String path : paths) {
+            BinaryMappingWriter.Frame frame = BinaryMappingWriter.readFrame(in);
+            assertEquals(path, frame.path);
+            if (path.startsWith("c/")) {
+                assertEquals("added", frame.status);
+                assertNull(frame.mapping);
+            } else {
+                assertEquals("modified", frame.status);
+                assertEquals(text(engine.diff(oldRoot.resolve(path), newRoot.resolve(path))), text(frame.mapping));
+            }
+        }
+        assertNull(BinaryMappingWriter.readFrame(in));
+    }
+
+    private static void copy(Path from, Path to) throws Exception {
+        Files.createDirectories(to.getParent());
+        Files.copy(from, to);
+    }
+
+    private static String text(LineMapping mapping) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextMappingWriter().write(mapping, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
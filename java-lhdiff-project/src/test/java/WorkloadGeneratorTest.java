@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkloadGeneratorTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void unmutatedPairIsTheIdentity() throws Exception {
+        WorkloadGenerator.Workload w = new WorkloadGenerator(seeds(), WorkloadGenerator.Rates.none()).generate(3000, 1);
+        assertEquals(3000, w.oldLines.size());
+        assertEquals(w.oldLines, w.newLines);
+        assertArrayEquals(LineMapping.identity(w.oldLines).newStart, w.truth.newStart);
+    }
+
+    @Test
+    void renamesKeepTheNormalizedLine() throws Exception {
+        WorkloadGenerator.Rates rates = WorkloadGenerator.Rates.none();
+        rates.rename = 0.3;
+        WorkloadGenerator.Workload w = new WorkloadGenerator(seeds(), rates).generate(3000, 2);
+        assertFalse(w.oldLines.equals(w.newLines));
+        // Line by line: a renamed call must not depend on block comment state
+        JavaLineNormalizer.StatefulNormalizer a = new JavaLineNormalizer.StatefulNormalizer();
+        JavaLineNormalizer.StatefulNormalizer b = new JavaLineNormalizer.StatefulNormalizer();
+        for (int i = 0; i < w.oldLines.size(); i++) {
+            assertEquals(i, w.truth.newStart[i]);
+            assertEquals(a.normalizeLine(w.oldLines.get(i)), b.normalizeLine(w.newLines.get(i)));
+        }
+    }
+
+    @Test
+    void truthIsConsistentAndRoundTripsThroughXml() throws Exception {
+        WorkloadGenerator.Rates rates = new WorkloadGenerator.Rates();
+        rates.split = 0.05;
+        rates.movesPerThousandLines = 5;
+        WorkloadGenerator.Workload w = new WorkloadGenerator(seeds(), rates).generate(20_000, 3);
+        LineMapping truth = w.truth;
+
+        BitSet used = new BitSet();
+        int splits = 0;
+        for (int i = 0; i < truth.oldSize(); i++) {
+            if (!truth.isMapped(i)) continue;
+            for (int j = truth.newStart[i]; j <= truth.newEnd[i]; j++) {
+                assertFalse(used.get(j), "new line " + j + " has two origins");
+                used.set(j);
+            }
+            if (truth.isSplit(i)) {
+                splits++;
+                String joined = w.newLines.get(truth.newStart[i]) + w.newLines.get(truth.newEnd[i]);
+                assertEquals(w.oldLines.get(i).replaceAll("\\s", ""), joined.replaceAll("\\s", ""));
+            }
+        }
+        assertTrue(splits > 0);
+
+        w.write(temp, "File01");
+        String xml = new String(Files.readAllBytes(temp.resolve("File01.xml")), "UTF-8");
+        List<String> locations = new ArrayList<>();
+        Matcher m = Pattern.compile("ORIG=\"(-?\\d+)\"\\s+NEW=\"(-?\\d+)\"").matcher(xml);
+        while (m.find()) locations.add(m.group(1) + ":" + m.group(2));
+        int expected = 0;
+        for (int i = 0; i < truth.oldSize(); i++) {
+            if (truth.oldBlank.get(i)) continue;
+            expected += truth.isMapped(i) ? truth.newEnd[i] - truth.newStart[i] + 1 : 1;
+        }
+        for (int j = 0; j < truth.newSize; j++) if (!used.get(j) && !truth.newBlank.get(j)) expected++;
+        assertEquals(expected, locations.size());
+        assertEquals(w.newLines, Files.readAllLines(temp.resolve("File01_New.java")));
+
+        // Accuracy of the default pipeline against the generated truth
+        LineMapping actual = new LHDiffEngine().diff(w.oldLines, w.newLines);
+        int agree = 0;
+        int reported = 0;
+        for (int i = 0; i < truth.oldSize(); i++) {
+            if (truth.oldBlank.get(i)) continue;
+            reported++;
+            if (truth.newStart[i] == actual.newStart[i]) agree++;
+        }
+        assertTrue(agree > reported / 2);
+    }
+
+    @Test
+    void emptySeedIsRejected() throws Exception {
+        List<List<String>> seeds = seeds();
+        seeds.add(new ArrayList<>());
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadGenerator(seeds, new WorkloadGenerator.Rates()));
+    }
+
+    private static List<List<String>> seeds() throws Exception {
+        List<List<String>> seeds = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(Paths.get("./datasets"))) {
+            for (Path p : walk.filter(p -> p.toString().endsWith(".java")).sorted().collect(Collectors.toList())) {
+                seeds.add(Files.readAllLines(p));
+            }
+        }
+        return seeds;
+    }
+}